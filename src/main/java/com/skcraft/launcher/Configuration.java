@@ -35,6 +35,8 @@ public class Configuration {
     private String proxyUsername;
     private String proxyPassword;
     private String gameKey;
+    private int maxConnectionsPerHost = 8;
+    private int downloadRateLimit = 0;
 
     @Override
     public boolean equals(Object o) {
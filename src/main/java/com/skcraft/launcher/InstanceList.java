@@ -135,10 +135,10 @@ public class InstanceList {
 
                 PackageList packages = HttpRequest
                         .get(packagesURL)
+                        .ifModified(launcher.getPackageListPath())
                         .execute()
-                        .expectResponseCode(200)
-                        .returnContent()
-                        .asJson(PackageList.class);
+                        .expectResponseCode(200, 304)
+                        .returnJson(PackageList.class, launcher.getPackageListPath());
 
                 if (packages.getMinimumVersion() > Launcher.PROTOCOL_VERSION) {
                     throw new LauncherException("Update required", _("errors.updateRequiredError"));
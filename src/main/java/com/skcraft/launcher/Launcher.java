@@ -15,6 +15,8 @@ import com.skcraft.launcher.auth.AccountList;
 import com.skcraft.launcher.auth.LoginService;
 import com.skcraft.launcher.auth.YggdrasilLoginService;
 import com.skcraft.launcher.dialog.LauncherFrame;
+import com.skcraft.launcher.install.ObjectStore;
+import com.skcraft.launcher.install.SourceTracker;
 import com.skcraft.launcher.model.minecraft.VersionManifest;
 import com.skcraft.launcher.persistence.Persistence;
 import com.skcraft.launcher.swing.SwingHelper;
@@ -44,7 +46,7 @@ import java.util.logging.Level;
 @Log
 public final class Launcher {
 
-    public static final int PROTOCOL_VERSION = 2;
+    public static final int PROTOCOL_VERSION = 4;
 
     @Getter
     private final ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool());
@@ -54,6 +56,8 @@ public final class Launcher {
     @Getter private final Configuration config;
     @Getter private final AccountList accounts;
     @Getter private final AssetsRoot assets;
+    @Getter private final ObjectStore objectStore;
+    @Getter private final SourceTracker sourceTracker = new SourceTracker();
 
     /**
      * Create a new launcher instance with the given base directory.
@@ -69,9 +73,12 @@ public final class Launcher {
                 "launcher.properties", "com.skcraft.launcher.propertiesFile");
         this.instances = new InstanceList(this);
         this.assets = new AssetsRoot(new File(baseDir, "assets"));
+        this.objectStore = new ObjectStore(new File(baseDir, "objects"));
         this.config = Persistence.load(new File(baseDir, "config.json"), Configuration.class);
         this.accounts = Persistence.load(new File(baseDir, "accounts.dat"), AccountList.class);
 
+        HttpRequest.setMaxConnectionsPerHost(config.getMaxConnectionsPerHost());
+
         if (accounts.getSize() > 0) {
             accounts.setSelectedItem(accounts.getElementAt(0));
         }
@@ -124,6 +131,15 @@ public final class Launcher {
         return new File(getBaseDir(), "temp");
     }
 
+    /**
+     * Get the path to the saved copy of the remote package list.
+     *
+     * @return the path
+     */
+    public File getPackageListPath() {
+        return new File(getTemporaryDir(), "packages.json");
+    }
+
     /**
      * Get the directory to store temporary install files.
      *
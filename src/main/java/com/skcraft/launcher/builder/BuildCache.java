@@ -0,0 +1,123 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.builder;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NonNull;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Remembers the hash of each file of a package from one build to the next,
+ * along with the file's size and modification time, so that files which
+ * haven't changed don't have to be hashed again.
+ * <p/>
+ * The cache also keeps track of which files were added, changed or removed
+ * since the previous build.
+ */
+@Data
+public class BuildCache {
+
+    /**
+     * Files modified this recently may still be changing without their
+     * size or modification time changing, so their hashes aren't reused.
+     */
+    private static final long RACY_INTERVAL = 2000;
+
+    private Map<String, Entry> files = new HashMap<String, Entry>();
+    @JsonIgnore
+    private final Set<String> seen = new HashSet<String>();
+    @JsonIgnore
+    private final List<String> added = new ArrayList<String>();
+    @JsonIgnore
+    private final List<String> changed = new ArrayList<String>();
+    @JsonIgnore
+    private int unchanged;
+
+    /**
+     * Get the hash of a file from the previous build, if the file's size and
+     * modification time haven't changed since then.
+     *
+     * @param path the path of the file in the package
+     * @param file the file
+     * @return the hash, or null if the file has to be hashed again
+     */
+    public synchronized String getHash(@NonNull String path, @NonNull File file) {
+        Entry entry = files.get(path);
+        if (entry != null && entry.getSize() == file.length() && entry.getModified() == file.lastModified()) {
+            return entry.getHash();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Record the hash of a file in this build.
+     *
+     * @param path the path of the file in the package
+     * @param file the file
+     * @param hash the hash of the file's contents
+     */
+    public synchronized void put(@NonNull String path, @NonNull File file, @NonNull String hash) {
+        Entry previous = files.get(path);
+        if (previous == null) {
+            added.add(path);
+        } else if (!hash.equalsIgnoreCase(previous.getHash())) {
+            changed.add(path);
+        } else {
+            unchanged++;
+        }
+        seen.add(path);
+
+        // The hash of a racy file is kept for the report, but without a
+        // modification time so that the file is hashed again next time
+        long modified = file.lastModified();
+        Entry entry = new Entry();
+        entry.setSize(file.length());
+        entry.setModified(System.currentTimeMillis() - modified >= RACY_INTERVAL ? modified : 0);
+        entry.setHash(hash);
+        files.put(path, entry);
+    }
+
+    /**
+     * Get the paths of files from the previous build that weren't in this
+     * build.
+     *
+     * @return the removed paths, sorted
+     */
+    @JsonIgnore
+    public synchronized List<String> getRemoved() {
+        List<String> removed = new ArrayList<String>();
+        for (String path : files.keySet()) {
+            if (!seen.contains(path)) {
+                removed.add(path);
+            }
+        }
+        Collections.sort(removed);
+        return removed;
+    }
+
+    /**
+     * Forget the files that weren't in this build.
+     */
+    public synchronized void pruneRemoved() {
+        files.keySet().retainAll(seen);
+    }
+
+    /**
+     * The size, modification time and hash of a file.
+     */
+    @Data
+    public static class Entry {
+        private long size;
+        private long modified;
+        private String hash;
+    }
+
+}
@@ -43,6 +43,16 @@ public class BuilderOptions {
     private File manifestPath;
     @Parameter(names = "--objects-dest", required = true)
     private File objectsDir;
+    @Parameter(names = "--delta-from")
+    private File previousManifestPath;
+    @Parameter(names = "--bundle-threshold")
+    private long bundleThreshold;
+    @Parameter(names = "--bundle-size")
+    private long bundleSize = 1024 * 1024 * 4;
+    @Parameter(names = "--cache")
+    private File cachePath;
+    @Parameter(names = "--threads")
+    private int threadCount = Runtime.getRuntime().availableProcessors();
 
     // Misc
     @Parameter(names = "--pretty-print")
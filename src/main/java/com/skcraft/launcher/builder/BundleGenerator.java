@@ -0,0 +1,159 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.builder;
+
+import com.google.common.io.Files;
+import com.skcraft.launcher.model.modpack.FileBundle;
+import com.skcraft.launcher.model.modpack.FileInstall;
+import com.skcraft.launcher.model.modpack.Manifest;
+import com.skcraft.launcher.model.modpack.ManifestEntry;
+import com.skcraft.launcher.util.FileHashing;
+import lombok.NonNull;
+import lombok.extern.java.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Groups the small files of a manifest into {@link FileBundle}s, writing a
+ * zip archive of the files' objects for each bundle.
+ * <p/>
+ * The files' individual objects are left in place, because the launcher
+ * still downloads files one at a time when only a few files of a bundle
+ * are needed.
+ */
+@Log
+public class BundleGenerator {
+
+    private static final long ENTRY_TIME = 315576000000L; // 1980-01-02, the start of zip time
+
+    private final File objectsDir;
+    private final long threshold;
+    private final long maxBundleSize;
+
+    /**
+     * Create a new bundle generator.
+     *
+     * @param objectsDir the directory containing the hashed objects
+     * @param threshold the maximum size of a file to bundle
+     * @param maxBundleSize the maximum combined size of the files in one bundle
+     */
+    public BundleGenerator(@NonNull File objectsDir, long threshold, long maxBundleSize) {
+        this.objectsDir = objectsDir;
+        this.threshold = threshold;
+        this.maxBundleSize = maxBundleSize;
+    }
+
+    /**
+     * Replace the small files of the given manifest with bundles.
+     *
+     * @param manifest the manifest
+     * @return the number of bundles created
+     * @throws IOException on I/O error
+     */
+    public int generate(@NonNull Manifest manifest) throws IOException {
+        List<ManifestEntry> tasks = manifest.getTasks();
+        List<ManifestEntry> result = new ArrayList<ManifestEntry>();
+        List<FileInstall> group = new ArrayList<FileInstall>();
+        long groupSize = 0;
+        int count = 0;
+
+        for (ManifestEntry entry : tasks) {
+            if (isBundleable(entry)) {
+                FileInstall file = (FileInstall) entry;
+                if (!group.isEmpty() && groupSize + file.getSize() > maxBundleSize) {
+                    count += flush(group, result);
+                    groupSize = 0;
+                }
+                group.add(file);
+                groupSize += file.getSize();
+            } else {
+                result.add(entry);
+            }
+        }
+
+        count += flush(group, result);
+
+        tasks.clear();
+        tasks.addAll(result);
+        return count;
+    }
+
+    private boolean isBundleable(ManifestEntry entry) {
+        if (entry.getClass() != FileInstall.class) {
+            return false;
+        }
+
+        FileInstall file = (FileInstall) entry;
+        return file.getHash() != null && file.getSize() <= threshold;
+    }
+
+    private int flush(List<FileInstall> group, List<ManifestEntry> result) throws IOException {
+        try {
+            if (group.size() < 2) {
+                result.addAll(group);
+                return 0;
+            }
+
+            result.add(createBundle(group));
+            return 1;
+        } finally {
+            group.clear();
+        }
+    }
+
+    private FileBundle createBundle(List<FileInstall> group) throws IOException {
+        File bundlesDir = new File(objectsDir, "bundles");
+        bundlesDir.mkdirs();
+        File tempFile = File.createTempFile("bundle", ".tmp", bundlesDir);
+        Set<String> added = new HashSet<String>();
+
+        ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            for (FileInstall file : group) {
+                String name = file.getHash().toLowerCase();
+                if (added.add(name)) {
+                    ZipEntry entry = new ZipEntry(name);
+                    entry.setTime(ENTRY_TIME); // So that the same files make the same bundle
+                    zos.putNextEntry(entry);
+                    Files.copy(new File(objectsDir, file.getLocation()), zos);
+                    zos.closeEntry();
+                }
+            }
+        } finally {
+            zos.close();
+        }
+
+        String hash = FileHashing.sha1(tempFile);
+        String location = "bundles/" + hash.substring(0, 2) + "/" + hash + ".zip";
+        File bundleFile = new File(objectsDir, location);
+
+        if (bundleFile.exists()) {
+            tempFile.delete();
+        } else {
+            bundleFile.getParentFile().mkdirs();
+            if (!tempFile.renameTo(bundleFile)) {
+                Files.move(tempFile, bundleFile);
+            }
+        }
+
+        FileBundle bundle = new FileBundle();
+        bundle.setHash(hash);
+        bundle.setLocation(location);
+        bundle.setSize(bundleFile.length());
+        bundle.getFiles().addAll(group);
+
+        log.info(String.format("Bundled %d file(s) into %s (%d bytes)", group.size(), location, bundle.getSize()));
+        return bundle;
+    }
+
+}
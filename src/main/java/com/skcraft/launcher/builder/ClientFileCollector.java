@@ -6,21 +6,31 @@
 
 package com.skcraft.launcher.builder;
 
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
+import com.google.common.base.Throwables;
 import com.google.common.io.Files;
 import com.skcraft.launcher.model.modpack.FileInstall;
 import com.skcraft.launcher.model.modpack.Manifest;
+import com.skcraft.launcher.util.FileHashing;
+import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.extern.java.Log;
 import org.apache.commons.io.FilenameUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Walks a path and adds hashed path versions to the given
  * {@link com.skcraft.launcher.model.modpack.Manifest}.
+ * <p/>
+ * Files are found by walking the directory first, and are then hashed and
+ * copied on a pool of threads. Entries are added to the manifest in order
+ * of their paths, so the manifest is the same regardless of the order that
+ * the files were processed in.
  */
 @Log
 public class ClientFileCollector extends DirectoryWalker {
@@ -28,7 +38,13 @@ public class ClientFileCollector extends DirectoryWalker {
     private final Manifest manifest;
     private final PropertiesApplicator applicator;
     private final File destDir;
-    private HashFunction hf = Hashing.sha1();
+    private final Map<String, File> found = new TreeMap<String, File>();
+    private final Set<String> claimedObjects = Collections.synchronizedSet(new HashSet<String>());
+    private final AtomicInteger copiedCount = new AtomicInteger();
+    @Getter @Setter
+    private BuildCache cache;
+    @Getter @Setter
+    private int threadCount = 1;
 
     /**
      * Create a new collector.
@@ -44,6 +60,57 @@ public class ClientFileCollector extends DirectoryWalker {
         this.destDir = destDir;
     }
 
+    /**
+     * Get the number of objects that were copied to the destination
+     * directory, which excludes objects that were already there.
+     *
+     * @return the number of objects copied
+     */
+    public int getCopiedCount() {
+        return copiedCount.get();
+    }
+
+    /**
+     * Walk the given directory, then hash and copy the files found and add
+     * them to the manifest.
+     *
+     * @param dir the directory
+     * @throws IOException thrown on I/O error
+     * @throws InterruptedException thrown on interruption
+     */
+    public void collect(@NonNull File dir) throws IOException, InterruptedException {
+        walk(dir);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount));
+        List<Future<FileInstall>> futures = new ArrayList<Future<FileInstall>>();
+
+        try {
+            for (final Map.Entry<String, File> entry : found.entrySet()) {
+                futures.add(executor.submit(new Callable<FileInstall>() {
+                    @Override
+                    public FileInstall call() throws Exception {
+                        return createEntry(entry.getValue(), entry.getKey());
+                    }
+                }));
+            }
+
+            for (Future<FileInstall> future : futures) {
+                FileInstall entry;
+                try {
+                    entry = future.get();
+                } catch (ExecutionException e) {
+                    Throwables.propagateIfPossible(e.getCause(), IOException.class);
+                    throw new IOException(e.getCause());
+                }
+                applicator.apply(entry);
+                manifest.getTasks().add(entry);
+            }
+        } finally {
+            executor.shutdownNow();
+            found.clear();
+        }
+    }
+
     @Override
     protected DirectoryBehavior getBehavior(@NonNull String name) {
         return getDirectoryBehavior(name);
@@ -55,19 +122,99 @@ public class ClientFileCollector extends DirectoryWalker {
             return;
         }
 
+        String path = FilenameUtils.separatorsToUnix(FilenameUtils.normalize(relPath));
+        File existing = found.get(path);
+        if (existing != null) {
+            File chosen = choose(existing, file);
+            log.warning(String.format("Both %s and %s would be installed to %s; using %s",
+                    existing.getAbsolutePath(), file.getAbsolutePath(), path, chosen.getAbsolutePath()));
+            if (chosen == existing) {
+                return;
+            }
+        }
+        found.put(path, file);
+    }
+
+    /**
+     * Choose which of two files that would be installed to the same path
+     * to use. Files in _CLIENT and _OPTIONAL end up at the same path as
+     * files outside of them, and the file that is inside more of those
+     * directories wins. Otherwise, the file whose path sorts first wins,
+     * since the order that files are found in is arbitrary.
+     *
+     * @param a one file
+     * @param b the other file
+     * @return the file to use
+     */
+    private static File choose(File a, File b) {
+        int depthA = getIgnoredDepth(a);
+        int depthB = getIgnoredDepth(b);
+        if (depthA != depthB) {
+            return depthA > depthB ? a : b;
+        }
+        return a.getPath().compareTo(b.getPath()) <= 0 ? a : b;
+    }
+
+    private static int getIgnoredDepth(File file) {
+        int depth = 0;
+        for (File dir = file.getParentFile(); dir != null; dir = dir.getParentFile()) {
+            if (getDirectoryBehavior(dir.getName()) == DirectoryBehavior.IGNORE) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    private FileInstall createEntry(File file, String to) throws IOException {
         FileInstall entry = new FileInstall();
-        String hash = Files.hash(file, hf).toString();
+        String hash = cache != null ? cache.getHash(to, file) : null;
+        File tempFile = null;
+
+        if (hash == null) {
+            // Without a known hash the object may be missing, so hash the
+            // file while copying it so that it's only read once; the copy
+            // is only skipped when the cache says which object to look for
+            destDir.mkdirs();
+            tempFile = File.createTempFile("object", ".tmp", destDir);
+            try {
+                hash = FileHashing.copy(file, tempFile);
+            } catch (IOException e) {
+                tempFile.delete();
+                throw e;
+            }
+        }
+
+        if (cache != null) {
+            cache.put(to, file, hash);
+        }
+
         String hashedPath = hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash;
         File destPath = new File(destDir, hashedPath);
         entry.setHash(hash);
         entry.setLocation(hashedPath);
-        entry.setTo(FilenameUtils.separatorsToUnix(FilenameUtils.normalize(relPath)));
+        entry.setTo(to);
         entry.setSize(file.length());
-        applicator.apply(entry);
-        destPath.getParentFile().mkdirs();
-        ClientFileCollector.log.info(String.format("Adding %s from %s...", relPath, file.getAbsolutePath()));
-        Files.copy(file, destPath);
-        manifest.getTasks().add(entry);
+
+        // Objects are named by their hash, so an existing object of the
+        // right size is already the same file (and only one thread has to
+        // copy the object if several files have the same contents)
+        if ((!destPath.exists() || destPath.length() != file.length()) && claimedObjects.add(hash)) {
+            destPath.getParentFile().mkdirs();
+            ClientFileCollector.log.info(String.format("Adding %s from %s...", to, file.getAbsolutePath()));
+            if (tempFile != null) {
+                destPath.delete();
+                if (!tempFile.renameTo(destPath)) {
+                    Files.move(tempFile, destPath);
+                }
+            } else {
+                Files.copy(file, destPath);
+            }
+            copiedCount.incrementAndGet();
+        } else if (tempFile != null) {
+            tempFile.delete();
+        }
+
+        return entry;
     }
 
     public static DirectoryBehavior getDirectoryBehavior(@NonNull String name) {
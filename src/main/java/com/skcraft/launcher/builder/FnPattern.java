@@ -0,0 +1,149 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.builder;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.EnumSet;
+
+/**
+ * A pattern for {@link FnMatch} that has been split up ahead of time into
+ * its leading literal text and the rest of the pattern, so that most paths
+ * can be rejected by comparing the literal text alone.
+ * <p/>
+ * Patterns that are only literal text, or literal text followed by a
+ * single <code>*</code>, are matched without calling {@link FnMatch} at
+ * all. Other patterns fall back to {@link FnMatch} once the literal text
+ * has matched, so every pattern matches exactly the same paths as it would
+ * with {@link FnMatch#fnmatch(String, String, java.util.EnumSet)}.
+ */
+public class FnPattern {
+
+    private final String pattern;
+    private final EnumSet<FnMatch.Flag> flags;
+    @Getter
+    private final String prefix;
+    @Getter
+    private final String suffix;
+    private final boolean caseFold;
+    private final Type type;
+
+    private enum Type {
+        LITERAL,
+        PREFIX_STAR,
+        GENERAL
+    }
+
+    /**
+     * Compile a pattern.
+     *
+     * @param pattern the pattern
+     * @param flags the flags to match with
+     */
+    public FnPattern(@NonNull String pattern, @NonNull EnumSet<FnMatch.Flag> flags) {
+        this.pattern = pattern;
+        this.flags = EnumSet.copyOf(flags);
+        this.caseFold = flags.contains(FnMatch.Flag.CASEFOLD);
+
+        boolean escape = !flags.contains(FnMatch.Flag.NOESCAPE);
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?' || c == '[') {
+                break;
+            } else if (c == '\\' && escape) {
+                if (i + 1 >= pattern.length()) {
+                    break; // Leave the odd trailing backslash to FnMatch
+                }
+                literal.append(pattern.charAt(i + 1));
+                i += 2;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+
+        this.prefix = literal.toString();
+
+        // Any text after the last special character has to be at the end
+        // of the path, unless a match can stop at a directory
+        int end = pattern.length();
+        if (!flags.contains(FnMatch.Flag.LEADING_DIR)) {
+            while (end > i && "*?[]\\".indexOf(pattern.charAt(end - 1)) == -1) {
+                end--;
+            }
+        }
+        this.suffix = end > i ? pattern.substring(end) : "";
+
+        if (flags.contains(FnMatch.Flag.LEADING_DIR)) {
+            type = Type.GENERAL;
+        } else if (i == pattern.length()) {
+            type = Type.LITERAL;
+        } else if (pattern.substring(i).matches("\\*+")) {
+            type = Type.PREFIX_STAR;
+        } else {
+            type = Type.GENERAL;
+        }
+    }
+
+    /**
+     * Test whether the given path matches.
+     *
+     * @param path the path
+     * @return true if the path matches
+     */
+    public boolean matches(String path) {
+        if (!hasPrefix(path)) {
+            return false;
+        }
+
+        int pos = prefix.length();
+
+        switch (type) {
+            case LITERAL:
+                return pos == path.length();
+            case PREFIX_STAR:
+                if (hasLeadingPeriod(path, pos)) {
+                    return false;
+                }
+                return !flags.contains(FnMatch.Flag.PATHNAME) || path.indexOf('/', pos) == -1;
+            default:
+                return FnMatch.fnmatch(pattern, path, flags);
+        }
+    }
+
+    private boolean hasPrefix(String path) {
+        if (path.length() < prefix.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length(); i++) {
+            char a = prefix.charAt(i);
+            char b = path.charAt(i);
+            if (a != b && !(caseFold && Character.toLowerCase(a) == Character.toLowerCase(b))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean hasLeadingPeriod(String path, int pos) {
+        return pos < path.length()
+                && flags.contains(FnMatch.Flag.PERIOD)
+                && path.charAt(pos) == '.'
+                && (pos == 0 || (flags.contains(FnMatch.Flag.PATHNAME) && path.charAt(pos - 1) == '/'));
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.builder;
+
+import com.google.common.primitives.Ints;
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * Finds which of many {@link FnPattern}s match a path without testing
+ * every pattern against it.
+ * <p/>
+ * Patterns are kept in a trie keyed by their leading literal text (in lower
+ * case), so looking up a path only visits the patterns whose literal text
+ * is a prefix of the path, and only those are tested in full. Patterns that
+ * start with a wildcard, such as <code>*.jar</code>, are kept in a second
+ * trie keyed by their trailing literal text instead, read backwards.
+ *
+ * @param <V> the type of value that is associated with each pattern
+ */
+public class FnPatternIndex<V> {
+
+    private final Node<V> root = new Node<V>();
+    private final Node<V> suffixRoot = new Node<V>();
+    private int size;
+
+    /**
+     * Add a pattern.
+     *
+     * @param pattern the pattern
+     * @param value the value to return when the pattern matches
+     */
+    public void add(@NonNull FnPattern pattern, V value) {
+        Node<V> node;
+        if (pattern.getPrefix().isEmpty() && !pattern.getSuffix().isEmpty()) {
+            node = suffixRoot;
+            String suffix = pattern.getSuffix();
+            for (int i = suffix.length() - 1; i >= 0; i--) {
+                node = node.getChild(suffix.charAt(i));
+            }
+        } else {
+            node = root;
+            String prefix = pattern.getPrefix();
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.getChild(prefix.charAt(i));
+            }
+        }
+        node.entries.add(new Entry<V>(pattern, value, size++));
+    }
+
+    /**
+     * Test whether any pattern matches the given path.
+     *
+     * @param path the path
+     * @return true if a pattern matches
+     */
+    public boolean matchesAny(@NonNull String path) {
+        return find(path, true, new ArrayList<Entry<V>>());
+    }
+
+    /**
+     * Get the values of the patterns that match the given path, in the
+     * order that the patterns were added. A value that was added with
+     * several matching patterns is returned once.
+     *
+     * @param path the path
+     * @return a list of values
+     */
+    public List<V> getMatches(@NonNull String path) {
+        List<Entry<V>> matched = new ArrayList<Entry<V>>();
+        find(path, false, matched);
+
+        Collections.sort(matched);
+
+        Set<V> seen = new HashSet<V>();
+        List<V> values = new ArrayList<V>();
+        for (Entry<V> entry : matched) {
+            if (seen.add(entry.value)) {
+                values.add(entry.value);
+            }
+        }
+        return values;
+    }
+
+    private boolean find(String path, boolean first, List<Entry<V>> matched) {
+        Node<V> node = root;
+        int i = 0;
+        while (node != null) {
+            if (test(node, path, first, matched)) {
+                return true;
+            }
+            node = i < path.length() ? node.children.get(Character.toLowerCase(path.charAt(i++))) : null;
+        }
+
+        node = suffixRoot;
+        i = path.length();
+        while (node != null) {
+            if (test(node, path, first, matched)) {
+                return true;
+            }
+            node = i > 0 ? node.children.get(Character.toLowerCase(path.charAt(--i))) : null;
+        }
+
+        return !matched.isEmpty();
+    }
+
+    private boolean test(Node<V> node, String path, boolean first, List<Entry<V>> matched) {
+        for (Entry<V> entry : node.entries) {
+            if (entry.pattern.matches(path)) {
+                matched.add(entry);
+                if (first) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static class Node<V> {
+        private final Map<Character, Node<V>> children = new HashMap<Character, Node<V>>();
+        private final List<Entry<V>> entries = new ArrayList<Entry<V>>();
+
+        private Node<V> getChild(char c) {
+            c = Character.toLowerCase(c);
+            Node<V> child = children.get(c);
+            if (child == null) {
+                child = new Node<V>();
+                children.put(c, child);
+            }
+            return child;
+        }
+    }
+
+    private static class Entry<V> implements Comparable<Entry<V>> {
+        private final FnPattern pattern;
+        private final V value;
+        private final int order;
+
+        private Entry(FnPattern pattern, V value, int order) {
+            this.pattern = pattern;
+            this.value = value;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Entry<V> o) {
+            return Ints.compare(order, o.order);
+        }
+    }
+
+}
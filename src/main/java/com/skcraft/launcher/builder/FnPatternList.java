@@ -7,6 +7,7 @@
 package com.skcraft.launcher.builder;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
@@ -25,9 +26,61 @@ public class FnPatternList {
     private List<String> exclude;
     @Getter @Setter @JsonIgnore
     private EnumSet<FnMatch.Flag> flags = DEFAULT_FLAGS;
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private transient FnPatternIndex<String> includeIndex;
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private transient FnPatternIndex<String> excludeIndex;
+
+    public void setInclude(List<String> include) {
+        this.include = include;
+        this.includeIndex = null;
+    }
+
+    public void setExclude(List<String> exclude) {
+        this.exclude = exclude;
+        this.excludeIndex = null;
+    }
+
+    public void setFlags(EnumSet<FnMatch.Flag> flags) {
+        this.flags = flags;
+        this.includeIndex = null;
+        this.excludeIndex = null;
+    }
 
     public boolean matches(String path) {
-        return include != null && matches(path, include) && (exclude == null || !matches(path, exclude));
+        return include != null && matchesInclude(path) && (exclude == null || !matchesExclude(path));
+    }
+
+    /**
+     * Test whether the path matches one of the include patterns.
+     *
+     * @param path the path
+     * @return true if an include pattern matches
+     */
+    public boolean matchesInclude(String path) {
+        if (include == null) {
+            return false;
+        }
+        if (includeIndex == null) {
+            includeIndex = compile(include);
+        }
+        return includeIndex.matchesAny(path);
+    }
+
+    /**
+     * Test whether the path matches one of the exclude patterns.
+     *
+     * @param path the path
+     * @return true if an exclude pattern matches
+     */
+    public boolean matchesExclude(String path) {
+        if (exclude == null) {
+            return false;
+        }
+        if (excludeIndex == null) {
+            excludeIndex = compile(exclude);
+        }
+        return excludeIndex.matchesAny(path);
     }
 
     public boolean matches(String path, Collection<String> patterns) {
@@ -40,4 +93,12 @@ public class FnPatternList {
         return false;
     }
 
+    private FnPatternIndex<String> compile(Collection<String> patterns) {
+        FnPatternIndex<String> index = new FnPatternIndex<String>();
+        for (String pattern : patterns) {
+            index.add(new FnPattern(pattern, flags), pattern);
+        }
+        return index;
+    }
+
 }
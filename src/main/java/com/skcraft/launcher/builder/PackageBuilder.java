@@ -11,6 +11,8 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.skcraft.launcher.model.minecraft.VersionManifest;
+import com.skcraft.launcher.model.modpack.FileBundle;
+import com.skcraft.launcher.model.modpack.FilePatch;
 import com.skcraft.launcher.model.modpack.Manifest;
 import com.skcraft.launcher.util.SimpleLogFormatter;
 import lombok.Getter;
@@ -19,6 +21,8 @@ import lombok.extern.java.Log;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Strings.emptyToNull;
@@ -33,6 +37,7 @@ public class PackageBuilder {
     private ObjectWriter writer;
     private final Manifest manifest;
     private final PropertiesApplicator applicator;
+    private BuildCache cache;
     @Getter
     private boolean prettyPrint = false;
 
@@ -66,9 +71,68 @@ public class PackageBuilder {
         }
     }
 
-    public void addFiles(File dir, File destDir) throws IOException {
+    public void addFiles(File dir, File destDir, int threadCount) throws IOException, InterruptedException {
         ClientFileCollector collector = new ClientFileCollector(this.manifest, applicator, destDir);
-        collector.walk(dir);
+        collector.setCache(cache);
+        collector.setThreadCount(threadCount);
+        collector.collect(dir);
+
+        if (cache != null) {
+            List<String> removed = cache.getRemoved();
+            Collections.sort(cache.getAdded());
+            Collections.sort(cache.getChanged());
+            for (String path : cache.getAdded()) {
+                log.info("New: " + path);
+            }
+            for (String path : cache.getChanged()) {
+                log.info("Changed: " + path);
+            }
+            for (String path : removed) {
+                log.info("Removed: " + path);
+            }
+            log.info(String.format("%d new, %d changed, %d removed and %d unchanged file(s)",
+                    cache.getAdded().size(), cache.getChanged().size(), removed.size(), cache.getUnchanged()));
+        }
+        log.info("Copied " + collector.getCopiedCount() + " new object(s) to " + destDir.getAbsolutePath());
+    }
+
+    public void readCache(File path) throws IOException {
+        if (path != null && path.exists()) {
+            cache = read(path, BuildCache.class);
+        } else if (path != null) {
+            cache = new BuildCache();
+        }
+    }
+
+    public void writeCache(File path) throws IOException {
+        if (path != null && cache != null) {
+            cache.pruneRemoved();
+            path.getAbsoluteFile().getParentFile().mkdirs();
+            mapper.writeValue(path, cache);
+        }
+    }
+
+    public void addPatches(File previousManifestPath, File destDir) throws IOException {
+        if (previousManifestPath != null) {
+            Manifest previous = read(previousManifestPath, Manifest.class);
+            PatchGenerator generator = new PatchGenerator(destDir);
+            int count = generator.generate(manifest, previous);
+            if (count > 0) {
+                manifest.setMinimumVersion(Math.max(manifest.getMinimumVersion(), FilePatch.MIN_PROTOCOL_VERSION));
+            }
+            log.info("Added " + count + " patch(es) from " + previousManifestPath.getAbsolutePath());
+        }
+    }
+
+    public void addBundles(File destDir, long threshold, long maxBundleSize) throws IOException {
+        if (threshold > 0) {
+            BundleGenerator generator = new BundleGenerator(destDir, threshold, maxBundleSize);
+            int count = generator.generate(manifest);
+            if (count > 0) {
+                manifest.setMinimumVersion(Math.max(manifest.getMinimumVersion(), FileBundle.MIN_PROTOCOL_VERSION));
+            }
+            log.info("Added " + count + " bundle(s) of files up to " + threshold + " bytes");
+        }
     }
 
     public void validateManifest() {
@@ -127,8 +191,9 @@ public class PackageBuilder {
      *
      * @param args arguments
      * @throws IOException thrown on I/O error
+     * @throws InterruptedException thrown on interruption
      */
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
         BuilderOptions options = parseArgs(args);
 
         // Initialize
@@ -153,9 +218,13 @@ public class PackageBuilder {
         manifest.setLibrariesLocation(options.getLibrariesLocation());
         manifest.setObjectsLocation(options.getObjectsLocation());
 
+        builder.readCache(options.getCachePath());
         builder.scan(options.getFilesDir());
-        builder.addFiles(options.getFilesDir(), options.getObjectsDir());
+        builder.addFiles(options.getFilesDir(), options.getObjectsDir(), options.getThreadCount());
+        builder.addPatches(options.getPreviousManifestPath(), options.getObjectsDir());
+        builder.addBundles(options.getObjectsDir(), options.getBundleThreshold(), options.getBundleSize());
         builder.writeManifest(options.getManifestPath());
+        builder.writeCache(options.getCachePath());
 
         log.info("Wrote manifest to " + options.getManifestPath().getAbsolutePath());
         log.info("Done.");
@@ -0,0 +1,135 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.builder;
+
+import com.skcraft.launcher.model.modpack.FileInstall;
+import com.skcraft.launcher.model.modpack.FilePatch;
+import com.skcraft.launcher.model.modpack.Manifest;
+import com.skcraft.launcher.model.modpack.ManifestEntry;
+import com.skcraft.launcher.util.BinaryDelta;
+import lombok.NonNull;
+import lombok.extern.java.Log;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.ListIterator;
+import java.util.Map;
+
+/**
+ * Replaces the files of a manifest that have changed since a previous
+ * version of the package with {@link FilePatch} entries, writing a
+ * {@link BinaryDelta} from the previous version's object for each one.
+ * <p/>
+ * The objects of the previous version must still be in the objects
+ * directory. Patches that aren't much smaller than the file are not used.
+ */
+@Log
+public class PatchGenerator {
+
+    private static final double MAX_PATCH_RATIO = 0.5;
+    /**
+     * Creating a delta holds both versions of the file in memory.
+     */
+    private static final long MAX_FILE_SIZE = 1024 * 1024 * 64;
+
+    private final File objectsDir;
+
+    /**
+     * Create a new patch generator.
+     *
+     * @param objectsDir the directory containing the hashed objects
+     */
+    public PatchGenerator(@NonNull File objectsDir) {
+        this.objectsDir = objectsDir;
+    }
+
+    /**
+     * Add patches to the given manifest.
+     *
+     * @param manifest the manifest to add patches to
+     * @param previous the manifest of the previous version of the package
+     * @return the number of patches added
+     * @throws IOException on I/O error
+     */
+    public int generate(@NonNull Manifest manifest, @NonNull Manifest previous) throws IOException {
+        Map<String, FileInstall> previousFiles = new HashMap<String, FileInstall>();
+        for (ManifestEntry entry : previous.getTasks()) {
+            if (entry instanceof FileInstall) {
+                FileInstall file = (FileInstall) entry;
+                previousFiles.put(getKey(file), file);
+            }
+        }
+
+        int count = 0;
+        ListIterator<ManifestEntry> it = manifest.getTasks().listIterator();
+        while (it.hasNext()) {
+            ManifestEntry entry = it.next();
+            if (!(entry instanceof FileInstall) || entry instanceof FilePatch) {
+                continue;
+            }
+
+            FileInstall file = (FileInstall) entry;
+            FileInstall old = previousFiles.get(getKey(file));
+            if (old == null || old.getHash() == null || file.getHash() == null
+                    || old.getHash().equalsIgnoreCase(file.getHash())) {
+                continue;
+            }
+
+            FilePatch patch = createPatch(file, old);
+            if (patch != null) {
+                it.set(patch);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private FilePatch createPatch(FileInstall file, FileInstall old) throws IOException {
+        File oldObject = new File(objectsDir, old.getLocation());
+        File newObject = new File(objectsDir, file.getLocation());
+
+        if (!oldObject.exists() || !newObject.exists()
+                || oldObject.length() > MAX_FILE_SIZE || newObject.length() > MAX_FILE_SIZE) {
+            return null;
+        }
+
+        String patchLocation = "patches/" + file.getHash().substring(0, 2) + "/" + old.getHash() + "-" + file.getHash();
+        File patchFile = new File(objectsDir, patchLocation);
+
+        if (!patchFile.exists()) {
+            log.info(String.format("Creating patch for %s from %s...", file.getTargetPath(), old.getHash()));
+            patchFile.getParentFile().mkdirs();
+            File tempFile = new File(patchFile.getParentFile(), patchFile.getName() + ".tmp");
+            BinaryDelta.create(oldObject, newObject, tempFile);
+            patchFile.delete();
+            if (!tempFile.renameTo(patchFile)) {
+                throw new IOException("Failed to move " + tempFile + " to " + patchFile);
+            }
+        }
+
+        if (patchFile.length() > newObject.length() * MAX_PATCH_RATIO) {
+            log.info(String.format("Not patching %s because the patch is too large (%d of %d bytes)",
+                    file.getTargetPath(), patchFile.length(), newObject.length()));
+            return null;
+        }
+
+        FilePatch patch = new FilePatch();
+        patch.copyFrom(file);
+        patch.setPatchFrom(old.getHash());
+        patch.setPatchLocation(patchLocation);
+        patch.setPatchSize(patchFile.length());
+        return patch;
+    }
+
+    private static String getKey(FileInstall file) {
+        return FilenameUtils.separatorsToUnix(FilenameUtils.normalize(file.getTargetPath()));
+    }
+
+}
@@ -20,6 +20,7 @@ public class PropertiesApplicator {
     private final Manifest manifest;
     private final Set<Feature> used = new HashSet<Feature>();
     private final List<FeaturePattern> features = new ArrayList<FeaturePattern>();
+    private FnPatternIndex<Integer> featureIndex;
     @Getter @Setter
     private FnPatternList userFiles;
 
@@ -48,9 +49,14 @@ public class PropertiesApplicator {
     }
 
     public Condition fromFeature(String path) {
+        if (featureIndex == null) {
+            featureIndex = createFeatureIndex();
+        }
+
         List<Feature> found = new ArrayList<Feature>();
-        for (FeaturePattern pattern : features) {
-            if (pattern.matches(path)) {
+        for (int i : featureIndex.getMatches(path)) {
+            FeaturePattern pattern = features.get(i);
+            if (!pattern.getFilePatterns().matchesExclude(path)) {
                 used.add(pattern.getFeature());
                 found.add(pattern.getFeature());
             }
@@ -65,6 +71,26 @@ public class PropertiesApplicator {
 
     public void register(FeaturePattern component) {
         features.add(component);
+        featureIndex = null;
+    }
+
+    /**
+     * Create an index of the include patterns of every registered feature,
+     * which maps each pattern to the index of its feature in the list.
+     *
+     * @return the index
+     */
+    private FnPatternIndex<Integer> createFeatureIndex() {
+        FnPatternIndex<Integer> index = new FnPatternIndex<Integer>();
+        for (int i = 0; i < features.size(); i++) {
+            FnPatternList patterns = features.get(i).getFilePatterns();
+            if (patterns != null && patterns.getInclude() != null) {
+                for (String pattern : patterns.getInclude()) {
+                    index.add(new FnPattern(pattern, patterns.getFlags()), i);
+                }
+            }
+        }
+        return index;
     }
 
     public List<Feature> getFeaturesInUse() {
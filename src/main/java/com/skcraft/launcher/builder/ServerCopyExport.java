@@ -7,18 +7,52 @@
 package com.skcraft.launcher.builder;
 
 import com.beust.jcommander.JCommander;
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
 import com.google.common.io.Files;
+import com.skcraft.launcher.util.FileHashing;
+import com.skcraft.launcher.util.HardLink;
 import com.skcraft.launcher.util.SimpleLogFormatter;
+import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.extern.java.Log;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
 
+/**
+ * Copies the server files of a pack to a directory.
+ * <p/>
+ * In sync mode, files are first collected and then only the files that
+ * differ from the copy in the destination directory are copied, on a pool
+ * of threads. A file that is unchanged from a previous export (given by
+ * {@link #setLinkDir(File)}) is hard linked from there instead of copied.
+ * The files written by each sync are recorded in the destination
+ * directory, so that files removed from the pack since the last sync can
+ * be deleted without touching files that the server created itself.
+ */
 @Log
 public class ServerCopyExport extends DirectoryWalker {
 
+    public static final String EXPORT_LOG_NAME = ".export_files";
+
     private final File destDir;
+    private final Map<String, File> found = new TreeMap<String, File>();
+    @Getter @Setter
+    private boolean sync;
+    @Getter @Setter
+    private boolean checksum;
+    @Getter @Setter
+    private boolean prune;
+    @Getter @Setter
+    private File linkDir;
+    @Getter @Setter
+    private int threadCount = 1;
+    @Getter
+    private final List<String> report = Collections.synchronizedList(new ArrayList<String>());
 
     public ServerCopyExport(@NonNull File destDir) {
         this.destDir = destDir;
@@ -39,6 +73,20 @@ public class ServerCopyExport extends DirectoryWalker {
 
     @Override
     protected void onFile(File file, String relPath) throws IOException {
+        if (sync) {
+            File existing = found.get(relPath);
+            if (existing != null) {
+                File chosen = choose(existing, file);
+                log.warning(String.format("Both %s and %s would be copied to %s; using %s",
+                        existing.getAbsolutePath(), file.getAbsolutePath(), relPath, chosen.getAbsolutePath()));
+                if (chosen == existing) {
+                    return;
+                }
+            }
+            found.put(relPath, file);
+            return;
+        }
+
         File dest = new File(destDir, relPath);
 
         log.info("Copying " + file.getAbsolutePath() + " to " + dest.getAbsolutePath());
@@ -46,7 +94,157 @@ public class ServerCopyExport extends DirectoryWalker {
         Files.copy(file, dest);
     }
 
-    public static void main(String[] args) throws IOException {
+    /**
+     * Choose which of two files that would be copied to the same path to
+     * use. Files in _SERVER end up at the same path as files outside of it,
+     * and the file that is inside more of those directories wins.
+     * Otherwise, the file whose path sorts first wins, since the order that
+     * files are found in is arbitrary.
+     *
+     * @param a one file
+     * @param b the other file
+     * @return the file to use
+     */
+    private File choose(File a, File b) {
+        int depthA = getIgnoredDepth(a);
+        int depthB = getIgnoredDepth(b);
+        if (depthA != depthB) {
+            return depthA > depthB ? a : b;
+        }
+        return a.getPath().compareTo(b.getPath()) <= 0 ? a : b;
+    }
+
+    private int getIgnoredDepth(File file) {
+        int depth = 0;
+        for (File dir = file.getParentFile(); dir != null; dir = dir.getParentFile()) {
+            if (getBehavior(dir.getName()) == DirectoryBehavior.IGNORE) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Walk the given directory and sync the files found with the
+     * destination directory.
+     *
+     * @param dir the directory
+     * @throws IOException thrown on I/O error
+     * @throws InterruptedException thrown on interruption
+     */
+    public void syncFrom(@NonNull File dir) throws IOException, InterruptedException {
+        setSync(true);
+        walk(dir);
+
+        File logFile = new File(destDir, EXPORT_LOG_NAME);
+        Set<String> previous = new TreeSet<String>();
+        if (logFile.exists()) {
+            previous.addAll(Files.readLines(logFile, Charsets.UTF_8));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount));
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        try {
+            for (final Map.Entry<String, File> entry : found.entrySet()) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        syncFile(entry.getValue(), entry.getKey());
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwables.propagateIfPossible(e.getCause(), IOException.class);
+                    throw new IOException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        previous.removeAll(found.keySet());
+        for (String path : previous) {
+            if (prune) {
+                File file = new File(destDir, path);
+                if (file.delete()) {
+                    log.info("Deleted " + file.getAbsolutePath());
+                    deleteEmptyParents(file.getParentFile());
+                }
+                report.add("deleted " + path);
+            } else {
+                report.add("stale " + path);
+            }
+        }
+
+        destDir.mkdirs();
+        Files.asCharSink(logFile, Charsets.UTF_8).writeLines(found.keySet());
+    }
+
+    private void syncFile(File file, String relPath) throws IOException {
+        File dest = new File(destDir, relPath);
+
+        if (dest.exists() && isSame(file, dest)) {
+            return;
+        }
+
+        String action = dest.exists() ? "updated " : "added ";
+        dest.getParentFile().mkdirs();
+        // The file may be a hard link into an earlier export, so never
+        // write to it in place
+        if (dest.exists() && !dest.delete()) {
+            throw new IOException("Failed to delete " + dest.getAbsolutePath() + " to replace it");
+        }
+
+        File linkSource = linkDir != null ? new File(linkDir, relPath) : null;
+        if (linkSource != null && linkSource.exists() && isSame(file, linkSource)
+                && HardLink.create(dest, linkSource)) {
+            log.info("Linking " + dest.getAbsolutePath() + " to " + linkSource.getAbsolutePath());
+            report.add(action + relPath + " (linked)");
+        } else {
+            log.info("Copying " + file.getAbsolutePath() + " to " + dest.getAbsolutePath());
+            Files.copy(file, dest);
+            dest.setLastModified(file.lastModified());
+            report.add(action + relPath);
+        }
+    }
+
+    /**
+     * Test whether a file has the same contents as the source file,
+     * comparing only the size and modification time unless checksums
+     * were asked for.
+     *
+     * @param source the source file
+     * @param file the file to compare with
+     * @return true if the files are the same
+     * @throws IOException thrown on I/O error
+     */
+    private boolean isSame(File source, File file) throws IOException {
+        if (source.length() != file.length()) {
+            return false;
+        }
+        if (!checksum && source.lastModified() == file.lastModified()) {
+            return true;
+        }
+        return FileHashing.sha1(source).equals(FileHashing.sha1(file));
+    }
+
+    private void deleteEmptyParents(File dir) {
+        while (dir != null && !dir.equals(destDir)) {
+            String[] children = dir.list();
+            if (children == null || children.length > 0 || !dir.delete()) {
+                break;
+            }
+            dir = dir.getParentFile();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
         SimpleLogFormatter.configureGlobalLogger();
 
         ServerExportOptions options = new ServerExportOptions();
@@ -55,7 +253,27 @@ public class ServerCopyExport extends DirectoryWalker {
         log.info("From: " + options.getSourceDir().getAbsolutePath());
         log.info("To: " + options.getDestDir().getAbsolutePath());
         ServerCopyExport task = new ServerCopyExport(options.getDestDir());
-        task.walk(options.getSourceDir());
+
+        if (options.isSync()) {
+            task.setChecksum(options.isChecksum());
+            task.setPrune(options.isPrune());
+            task.setLinkDir(options.getLinkDir());
+            task.setThreadCount(options.getThreadCount());
+            task.syncFrom(options.getSourceDir());
+
+            List<String> report = new ArrayList<String>(task.getReport());
+            Collections.sort(report);
+            for (String line : report) {
+                log.info(line);
+            }
+            log.info(report.size() + " change(s)");
+
+            if (options.getReportPath() != null) {
+                Files.asCharSink(options.getReportPath(), Charsets.UTF_8).writeLines(report);
+            }
+        } else {
+            task.walk(options.getSourceDir());
+        }
     }
 
 }
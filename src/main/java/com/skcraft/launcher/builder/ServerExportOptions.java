@@ -19,4 +19,18 @@ public class ServerExportOptions {
     @Parameter(names = "--dest", required = true)
     private File destDir;
 
+    // Sync
+    @Parameter(names = "--sync")
+    private boolean sync;
+    @Parameter(names = "--checksum")
+    private boolean checksum;
+    @Parameter(names = "--prune")
+    private boolean prune;
+    @Parameter(names = "--link-dest")
+    private File linkDir;
+    @Parameter(names = "--threads")
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    @Parameter(names = "--report")
+    private File reportPath;
+
 }
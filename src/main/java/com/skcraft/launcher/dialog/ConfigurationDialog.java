@@ -46,6 +46,7 @@ public class ConfigurationDialog extends JDialog {
     private final JPasswordField proxyPasswordText = new JPasswordField();
     private final FormPanel2 advancedPanel = new FormPanel2();
     private final JTextField gameKeyText = new JTextField();
+    private final JSpinner downloadRateLimitSpinner = new JSpinner();
     private final LinedBoxPanel buttonsPanel = new LinedBoxPanel(true);
     private final JButton okButton = new JButton(_("button.ok"));
     private final JButton cancelButton = new JButton(_("button.cancel"));
@@ -83,6 +84,7 @@ public class ConfigurationDialog extends JDialog {
         mapper.map(proxyUsernameText, "proxyUsername");
         mapper.map(proxyPasswordText, "proxyPassword");
         mapper.map(gameKeyText, "gameKey");
+        mapper.map(downloadRateLimitSpinner, "downloadRateLimit");
 
         mapper.copyFromObject();
     }
@@ -112,6 +114,7 @@ public class ConfigurationDialog extends JDialog {
         tabbedPane.addTab(_("options.proxyTab"), SwingHelper.alignTabbedPane(proxySettingsPanel));
 
         advancedPanel.addRow(new JLabel(_("options.gameKey")), gameKeyText);
+        advancedPanel.addRow(new JLabel(_("options.downloadRateLimit")), downloadRateLimitSpinner);
         SwingHelper.removeOpaqueness(advancedPanel);
         tabbedPane.addTab(_("options.advancedTab"), SwingHelper.alignTabbedPane(advancedPanel));
 
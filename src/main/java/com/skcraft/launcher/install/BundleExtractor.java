@@ -0,0 +1,171 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.install;
+
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.skcraft.launcher.util.FileHashing;
+import lombok.NonNull;
+import lombok.extern.java.Log;
+
+import java.io.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static com.skcraft.launcher.LauncherUtils.checkInterrupted;
+import static com.skcraft.launcher.util.SharedLocale._;
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+/**
+ * Installs files from a downloaded bundle, which is a zip archive of files
+ * named by their SHA-1 hash. The archive is read as a stream and only the
+ * members that were asked for are extracted.
+ */
+@Log
+public class BundleExtractor implements InstallTask {
+
+    private final InstallLog installLog;
+    private final ObjectStore store;
+    private final File bundle;
+    private final Map<String, List<Member>> members = new HashMap<String, List<Member>>();
+    private int total;
+    private volatile int extracted;
+
+    /**
+     * Create a new task.
+     *
+     * @param installLog the install log
+     * @param store the object store to add extracted files to, or null to not use one
+     * @param bundle the downloaded bundle
+     */
+    public BundleExtractor(@NonNull InstallLog installLog, ObjectStore store, @NonNull File bundle) {
+        this.installLog = installLog;
+        this.store = store;
+        this.bundle = bundle;
+    }
+
+    /**
+     * Add a file to extract.
+     *
+     * @param hash the SHA-1 hash of the file, which is its name in the bundle
+     * @param target the file to install to
+     * @param link true to hard link the object into place if possible
+     */
+    public void addMember(@NonNull String hash, @NonNull File target, boolean link) {
+        String name = hash.toLowerCase();
+        List<Member> list = members.get(name);
+        if (list == null) {
+            list = new ArrayList<Member>();
+            members.put(name, list);
+        }
+        list.add(new Member(target, link));
+        total++;
+    }
+
+    @Override
+    public void execute() throws Exception {
+        log.log(Level.INFO, "Extracting {0} file(s) from {1}...", new Object[]{total, bundle.getName()});
+
+        Set<String> remaining = new HashSet<String>(members.keySet());
+        ZipInputStream zis = null;
+
+        try {
+            zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(bundle)));
+            ZipEntry entry;
+            while (!remaining.isEmpty() && (entry = zis.getNextEntry()) != null) {
+                checkInterrupted();
+
+                String name = entry.getName().toLowerCase();
+                if (remaining.remove(name)) {
+                    extract(zis, name, members.get(name));
+                }
+            }
+        } finally {
+            closeQuietly(zis);
+        }
+
+        if (!remaining.isEmpty()) {
+            throw new IOException(bundle + " is missing " + remaining.size() + " file(s)");
+        }
+
+        bundle.delete();
+    }
+
+    private void extract(InputStream in, String hash, List<Member> targets) throws IOException {
+        File tempFile = new File(bundle.getParentFile(), bundle.getName() + "." + hash);
+        MessageDigest digest = FileHashing.createDigest();
+        OutputStream out = null;
+
+        try {
+            out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)), digest);
+            ByteStreams.copy(in, out);
+        } finally {
+            closeQuietly(out);
+        }
+
+        String actual = HashCode.fromBytes(digest.digest()).toString();
+        if (!actual.equalsIgnoreCase(hash)) {
+            tempFile.delete();
+            throw new IOException("Expected SHA-1 " + hash + " but got " + actual + " in " + bundle);
+        }
+
+        if (store != null) {
+            store.add(tempFile, hash);
+            for (Member member : targets) {
+                store.materialize(hash, member.target, member.link);
+                installLog.add(member.target, member.target);
+                extracted++;
+            }
+        } else {
+            for (Member member : targets) {
+                member.target.getParentFile().mkdirs();
+                member.target.delete();
+                Files.copy(tempFile, member.target);
+                installLog.add(member.target, member.target);
+                extracted++;
+            }
+            tempFile.delete();
+        }
+    }
+
+    @Override
+    public Collection<File> getTargets() {
+        List<File> targets = new ArrayList<File>();
+        for (List<Member> list : members.values()) {
+            for (Member member : list) {
+                targets.add(member.target);
+            }
+        }
+        return targets;
+    }
+
+    @Override
+    public double getProgress() {
+        return total > 0 ? extracted / (double) total : -1;
+    }
+
+    @Override
+    public String getStatus() {
+        return _("installer.extractingBundle", bundle.getName(), extracted, total);
+    }
+
+    private static class Member {
+        private final File target;
+        private final boolean link;
+
+        private Member(File target, boolean link) {
+            this.target = target;
+            this.link = link;
+        }
+    }
+
+}
@@ -15,7 +15,56 @@ import java.util.List;
 
 public interface Downloader extends ProgressObservable {
 
+    /**
+     * How urgently a download is needed. Higher priority downloads are
+     * started first, and downloads of the same priority are started
+     * largest first.
+     */
+    enum Priority {
+        /**
+         * Needed before anything else can happen, such as the game .jar
+         * and libraries.
+         */
+        CRITICAL,
+        /**
+         * Needed to launch the game.
+         */
+        NORMAL,
+        /**
+         * Files that aren't needed to launch the game at all. (Assets are
+         * not optional, because the game needs them to run.)
+         */
+        OPTIONAL
+    }
+
     File download(List<URL> urls, String key, long size, String name);
 
     File download(URL url, String key, long size, String name);
+
+    /**
+     * Queue a download that is checked against the given SHA-1 hash
+     * as it is received.
+     *
+     * @param urls the URLs to try, in order
+     * @param key a key to identify the file
+     * @param size the expected size
+     * @param name the name to show, or null
+     * @param hash the expected SHA-1 hash, or null to skip verification
+     * @return the file that the download will be saved to
+     */
+    File download(List<URL> urls, String key, long size, String name, String hash);
+
+    /**
+     * Queue a download that is checked against the given SHA-1 hash
+     * as it is received.
+     *
+     * @param urls the URLs to try, in order
+     * @param key a key to identify the file
+     * @param size the expected size
+     * @param name the name to show, or null
+     * @param hash the expected SHA-1 hash, or null to skip verification
+     * @param priority the priority
+     * @return the file that the download will be saved to
+     */
+    File download(List<URL> urls, String key, long size, String name, String hash, Priority priority);
 }
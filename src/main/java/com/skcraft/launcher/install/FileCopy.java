@@ -12,6 +12,8 @@ import lombok.extern.java.Log;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.logging.Level;
 
 import static com.skcraft.launcher.util.SharedLocale._;
@@ -34,6 +36,11 @@ public class FileCopy implements InstallTask {
         Files.copy(from, to);
     }
 
+    @Override
+    public Collection<File> getTargets() {
+        return Collections.singletonList(to);
+    }
+
     @Override
     public double getProgress() {
         return -1;
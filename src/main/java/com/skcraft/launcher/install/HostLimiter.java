@@ -0,0 +1,133 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.install;
+
+import lombok.extern.java.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Limits the number of concurrent downloads per host, adjusting each
+ * host's limit AIMD-style: it grows by about one slot for every window of
+ * successful downloads and is cut when downloads fail or when the
+ * throughput of large downloads collapses.
+ * </p>
+ * Small files are dominated by request latency rather than bandwidth,
+ * so they only ever grow the limit.
+ */
+@Log
+class HostLimiter {
+
+    private static final long SMALL_TRANSFER = 64 * 1024;
+
+    private final Map<String, Host> hosts = new HashMap<String, Host>();
+    private final int initialLimit;
+    private final int maxLimit;
+
+    /**
+     * Create a new limiter.
+     *
+     * @param initialLimit the initial number of concurrent downloads per host
+     * @param maxLimit the maximum number of concurrent downloads per host
+     */
+    HostLimiter(int initialLimit, int maxLimit) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.initialLimit = Math.max(1, Math.min(initialLimit, this.maxLimit));
+    }
+
+    private Host get(String name) {
+        Host host = hosts.get(name);
+        if (host == null) {
+            host = new Host();
+            host.limit = initialLimit;
+            hosts.put(name, host);
+        }
+        return host;
+    }
+
+    /**
+     * Take a download slot for the given host if one is free.
+     *
+     * @param name the host name
+     * @return true if a slot was taken
+     */
+    public synchronized boolean tryAcquire(String name) {
+        Host host = get(name);
+        if (host.active < (int) host.limit) {
+            host.active++;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Take a download slot for the given host, waiting for one to be free.
+     *
+     * @param name the host name
+     * @throws InterruptedException thrown on interruption
+     */
+    public synchronized void acquire(String name) throws InterruptedException {
+        while (!tryAcquire(name)) {
+            wait();
+        }
+    }
+
+    /**
+     * Return a slot previously taken with {@link #tryAcquire(String)} or
+     * {@link #acquire(String)}.
+     *
+     * @param name the host name
+     */
+    public synchronized void release(String name) {
+        Host host = get(name);
+        host.active = Math.max(0, host.active - 1);
+        notifyAll();
+    }
+
+    /**
+     * Record the outcome of a transfer from the given host. Requests that
+     * failed for reasons that have nothing to do with the host's load, such
+     * as a 404 for a file that isn't there, shouldn't be reported.
+     *
+     * @param name the host name
+     * @param success true if the transfer succeeded
+     * @param bytes the number of bytes transferred
+     * @param millis the time taken, in milliseconds
+     */
+    public synchronized void report(String name, boolean success, long bytes, long millis) {
+        Host host = get(name);
+        double previous = host.limit;
+
+        if (!success) {
+            host.limit = Math.max(1, host.limit / 2);
+        } else if (bytes < SMALL_TRANSFER) {
+            host.limit = Math.min(maxLimit, host.limit + 1 / host.limit);
+        } else {
+            double rate = bytes / (double) Math.max(1, millis);
+            if (host.rate > 0 && rate < host.rate / 2) {
+                host.limit = Math.max(1, host.limit * 0.75);
+            } else {
+                host.limit = Math.min(maxLimit, host.limit + 1 / host.limit);
+            }
+            host.rate = host.rate > 0 ? host.rate * 0.8 + rate * 0.2 : rate;
+        }
+
+        if ((int) previous != (int) host.limit) {
+            log.log(Level.INFO, "Concurrent downloads for {0} is now {1}", new Object[]{name, (int) host.limit});
+        }
+    }
+
+    private static class Host {
+        private double limit;
+        private int active;
+        private double rate;
+    }
+
+}
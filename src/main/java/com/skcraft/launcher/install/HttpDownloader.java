@@ -8,14 +8,16 @@ package com.skcraft.launcher.install;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
-import com.google.common.util.concurrent.Futures;
-import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.common.util.concurrent.MoreExecutors;
 import com.skcraft.concurrency.ProgressObservable;
+import com.skcraft.launcher.util.BandwidthLimiter;
+import com.skcraft.launcher.util.FileHashing;
 import com.skcraft.launcher.util.HttpRequest;
+import com.skcraft.launcher.util.HttpValidators;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
@@ -23,10 +25,12 @@ import lombok.extern.java.Log;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
+import java.util.concurrent.*;
 import java.util.logging.Level;
 
 import static com.skcraft.launcher.util.SharedLocale._;
@@ -34,19 +38,39 @@ import static com.skcraft.launcher.util.SharedLocale._;
 @Log
 public class HttpDownloader implements Downloader {
 
+    private static final Comparator<HttpDownloadJob> JOB_ORDER = new Comparator<HttpDownloadJob>() {
+        @Override
+        public int compare(HttpDownloadJob o1, HttpDownloadJob o2) {
+            return ComparisonChain.start()
+                    .compare(o1.priority, o2.priority)
+                    .compare(o2.size, o1.size)
+                    .result();
+        }
+    };
+
     private final Random random = new Random();
     private final HashFunction hf = Hashing.sha1();
 
     private final File tempDir;
-    @Getter @Setter private int threadCount = 6;
+    @Getter @Setter private int threadCount = 16;
+    @Getter @Setter private int hostConnections = 4;
+    @Getter @Setter private long segmentThreshold = 4 * 1024 * 1024;
+    @Getter @Setter private int segmentCount = 4;
     @Getter @Setter private int retryDelay = 2000;
     @Getter @Setter private int tryCount = 3;
+    @Getter @Setter @NonNull private SourceTracker sourceTracker = new SourceTracker();
 
     private List<HttpDownloadJob> queue = new ArrayList<HttpDownloadJob>();
     private final Set<String> usedKeys = new HashSet<String>();
+    private final Set<File> queuedFiles = new HashSet<File>();
+    private final Set<File> failureAllowed = new HashSet<File>();
+    @Setter private volatile Listener listener;
 
     private final List<HttpDownloadJob> running = new ArrayList<HttpDownloadJob>();
     private final List<HttpDownloadJob> failed = new ArrayList<HttpDownloadJob>();
+    private HostLimiter hostLimiter;
+    private BandwidthLimiter bandwidthLimiter;
+    private int dispatched = 0;
     private long downloaded = 0;
     private long total = 0;
     private int left = 0;
@@ -60,6 +84,15 @@ public class HttpDownloader implements Downloader {
         this.tempDir = tempDir;
     }
 
+    /**
+     * Set the maximum combined download rate of all jobs.
+     *
+     * @param bytesPerSecond the rate in bytes per second, or 0 for no limit
+     */
+    public synchronized void setBandwidthLimit(long bytesPerSecond) {
+        bandwidthLimiter = bytesPerSecond > 0 ? new BandwidthLimiter(bytesPerSecond) : null;
+    }
+
     /**
      * Make sure that we aren't re-using hash IDs.
      *
@@ -77,25 +110,98 @@ public class HttpDownloader implements Downloader {
     }
 
     @Override
-    public synchronized File download(@NonNull List<URL> urls, @NonNull String key, long size, String name) {
+    public File download(@NonNull List<URL> urls, @NonNull String key, long size, String name) {
+        return download(urls, key, size, name, null);
+    }
+
+    @Override
+    public File download(@NonNull List<URL> urls, @NonNull String key, long size, String name, String hash) {
+        return download(urls, key, size, name, hash, Priority.NORMAL);
+    }
+
+    @Override
+    public synchronized File download(@NonNull List<URL> urls, @NonNull String key, long size, String name,
+                                      String hash, @NonNull Priority priority) {
         if (urls.isEmpty()) {
             throw new IllegalArgumentException("Can't download empty list of URLs");
         }
 
-        String hash = hf.hashString(Strings.nullToEmpty(key) + urls.get(0), Charsets.UTF_8).toString();
-        hash = createUniqueKey(hash);
-        File tempFile = new File(tempDir, hash.substring(0, 2) + "/" + hash);
+        File tempFile = createTempFile(urls, key);
 
         // If the file is already downloaded (such as from before), then don't re-download
         if (!tempFile.exists()) {
             total += size;
             left++;
-            queue.add(new HttpDownloadJob(tempFile, urls, size, name != null ? name : tempFile.getName()));
+            queue.add(new HttpDownloadJob(tempFile, urls, size, name != null ? name : tempFile.getName(),
+                    hash, priority));
+            queuedFiles.add(tempFile);
         }
 
         return tempFile;
     }
 
+    private File createTempFile(List<URL> urls, String key) {
+        String id = hf.hashString(Strings.nullToEmpty(key) + urls.get(0), Charsets.UTF_8).toString();
+        id = createUniqueKey(id);
+        return new File(tempDir, id.substring(0, 2) + "/" + id);
+    }
+
+    /**
+     * Create a download that isn't queued, for a file that may turn out to
+     * be needed only after the queued downloads have started. The download
+     * is run on the calling thread with {@link HttpDownloadJob#downloadNow()},
+     * with the same retries, source ranking, host limits and bandwidth limit
+     * as queued downloads.
+     *
+     * @param urls the URLs to try
+     * @param key a key to identify the file
+     * @param size the expected size
+     * @param name the name to show, or null
+     * @param hash the expected SHA-1 hash, or null to skip verification
+     * @return the job
+     */
+    public synchronized HttpDownloadJob createJob(@NonNull List<URL> urls, @NonNull String key, long size,
+                                                  String name, String hash) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("Can't download empty list of URLs");
+        }
+
+        File tempFile = createTempFile(urls, key);
+        return new HttpDownloadJob(tempFile, urls, size, name != null ? name : tempFile.getName(),
+                hash, Priority.NORMAL);
+    }
+
+    private synchronized HostLimiter getHostLimiter() {
+        if (hostLimiter == null) {
+            hostLimiter = new HostLimiter(hostConnections, threadCount);
+        }
+        return hostLimiter;
+    }
+
+    /**
+     * Let the download to the given file fail without failing the other
+     * downloads, for a file that can be done without (such as a patch,
+     * when the full file can be downloaded instead). If the download
+     * fails, the file is left missing and the listener is told that the
+     * download is over all the same.
+     *
+     * @param file the file returned by one of the download methods
+     */
+    public synchronized void allowFailure(@NonNull File file) {
+        failureAllowed.add(file);
+    }
+
+    /**
+     * Return whether a download to the given file has been queued, rather
+     * than the file having been left over from an earlier run.
+     *
+     * @param file the file returned by one of the download methods
+     * @return true if queued
+     */
+    public synchronized boolean isQueued(File file) {
+        return queuedFiles.contains(file);
+    }
+
 
     @Override
     public File download(URL url, String key, long size, String name) {
@@ -106,6 +212,12 @@ public class HttpDownloader implements Downloader {
 
     /**
      * Prevent further downloads from being queued and download queued files.
+     * <p/>
+     * Jobs are dispatched by priority, and then largest first so that a
+     * big file doesn't end up downloading alone at the end, to a pool of
+     * up to {@link #getThreadCount()} threads, but only while the host that
+     * a job downloads from has a free slot in its (adaptive) concurrency
+     * limit.
      *
      * @throws InterruptedException thrown on interruption
      * @throws IOException thrown on I/O error
@@ -113,27 +225,46 @@ public class HttpDownloader implements Downloader {
     public void execute() throws InterruptedException, IOException {
         synchronized (this) {
             queue = Collections.unmodifiableList(queue);
+            getHostLimiter();
         }
 
-        ListeningExecutorService executor = MoreExecutors.listeningDecorator(
-                Executors.newFixedThreadPool(threadCount));
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
 
         try {
-            List<ListenableFuture<?>> futures = new ArrayList<ListenableFuture<?>>();
-
             synchronized (this) {
-                for (HttpDownloadJob job : queue) {
-                    futures.add(executor.submit(job));
+                List<HttpDownloadJob> pending = new LinkedList<HttpDownloadJob>(queue);
+                Collections.sort(pending, JOB_ORDER);
+
+                while (!pending.isEmpty() || dispatched > 0) {
+                    // Ranking a job's sources isn't free, so the jobs of a
+                    // host that is already full are passed over using the
+                    // host that they were last ranked against
+                    Set<String> fullHosts = new HashSet<String>();
+                    Iterator<HttpDownloadJob> it = pending.iterator();
+                    while (it.hasNext() && dispatched < threadCount) {
+                        HttpDownloadJob job = it.next();
+                        if (job.scheduledHost != null && fullHosts.contains(job.scheduledHost)) {
+                            continue;
+                        }
+                        String host = job.getPreferredHost();
+                        job.scheduledHost = host;
+                        if (hostLimiter.tryAcquire(host)) {
+                            job.heldHost = host;
+                            it.remove();
+                            dispatched++;
+                            executor.execute(job);
+                        } else {
+                            fullHosts.add(host);
+                        }
+                    }
+
+                    wait();
                 }
-            }
 
-            try {
-                Futures.allAsList(futures).get();
-            } catch (ExecutionException e) {
-                throw new IOException("Something went wrong", e);
-            }
+                if (bandwidthLimiter != null) {
+                    log.info("Bandwidth limiter: " + bandwidthLimiter);
+                }
 
-            synchronized (this) {
                 if (failed.size() > 0) {
                     throw new IOException(failed.size() + " file(s) could not be downloaded");
                 }
@@ -177,18 +308,104 @@ public class HttpDownloader implements Downloader {
         }
     }
 
+    /**
+     * Thrown when a source refuses a request for a reason that has to do
+     * with the file being asked for (such as 404 Not Found) rather than the
+     * health of the source, so the failure isn't held against the source.
+     */
+    private static class ClientErrorException extends IOException {
+        private ClientErrorException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The Content-Range of a partial response, such as
+     * <code>bytes 100-999/1000</code>.
+     */
+    private static class ContentRange {
+        private final long start;
+        private final long end;
+        private final long length;
+
+        private ContentRange(long start, long end, long length) {
+            this.start = start;
+            this.end = end;
+            this.length = length;
+        }
+
+        /**
+         * Parse the Content-Range header of a response.
+         *
+         * @param request the executed request
+         * @return the range, with a length of -1 if the length isn't known,
+         *         or null if there is no valid range
+         */
+        private static ContentRange from(HttpRequest request) {
+            String range = Strings.nullToEmpty(request.getHeaderField("Content-Range")).trim();
+            int dash = range.indexOf('-');
+            int slash = range.indexOf('/');
+            if (!range.startsWith("bytes ") || dash < 0 || slash < dash) {
+                return null;
+            }
+
+            try {
+                long start = Long.parseLong(range.substring(6, dash).trim());
+                long end = Long.parseLong(range.substring(dash + 1, slash).trim());
+                String lengthField = range.substring(slash + 1).trim();
+                long length = lengthField.equals("*") ? -1 : Long.parseLong(lengthField);
+                if (start < 0 || end < start || (length >= 0 && end >= length)) {
+                    return null;
+                }
+                return new ContentRange(start, end, length);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return start + "-" + end + "/" + (length >= 0 ? length : "*");
+        }
+    }
+
+    /**
+     * Notified of each download as soon as it completes.
+     */
+    public interface Listener {
+
+        /**
+         * Called from the download's thread once the file is in place, or
+         * once a download that is allowed to fail has failed.
+         *
+         * @param file the file returned by one of the download methods
+         */
+        void downloadCompleted(File file);
+
+    }
+
     public class HttpDownloadJob implements Runnable, ProgressObservable {
         private final File destFile;
         private final List<URL> urls;
         private final long size;
         @Getter private String name;
-        private HttpRequest request;
-
-        private HttpDownloadJob(File destFile, List<URL> urls, long size, String name) {
+        private final String hash;
+        private final Priority priority;
+        private volatile HttpRequest request;
+        private volatile List<HttpRequest> segments;
+        private volatile long segmentedLength;
+        private volatile long latency;
+        private volatile String heldHost;
+        private String scheduledHost;
+
+        private HttpDownloadJob(File destFile, List<URL> urls, long size, String name, String hash,
+                                Priority priority) {
             this.destFile = destFile;
             this.urls = urls;
             this.size = size;
             this.name = name;
+            this.hash = hash;
+            this.priority = priority;
         }
 
         @Override
@@ -203,20 +420,124 @@ public class HttpDownloader implements Downloader {
                 synchronized (HttpDownloader.this) {
                     downloaded += size;
                 }
+
+                notifyListener();
             } catch (IOException e) {
-                synchronized (HttpDownloader.this) {
-                    failed.add(this);
-                }
+                failed();
             } catch (InterruptedException e) {
                 log.info("Download of " + destFile + " was interrupted");
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Failed to download " + destFile, e);
+                failed();
             } finally {
+                if (heldHost != null) {
+                    hostLimiter.release(heldHost);
+                }
                 synchronized (HttpDownloader.this) {
                     left--;
+                    dispatched--;
+                    running.remove(this);
+                    HttpDownloader.this.notifyAll();
+                }
+            }
+        }
+
+        private void failed() {
+            boolean allowed;
+            synchronized (HttpDownloader.this) {
+                allowed = failureAllowed.contains(destFile);
+                if (!allowed) {
+                    failed.add(this);
+                }
+            }
+
+            if (allowed) {
+                log.info("Continuing without " + destFile + " (" + name + ")");
+                notifyListener();
+            }
+        }
+
+        private void notifyListener() {
+            Listener listener = HttpDownloader.this.listener;
+            if (listener != null) {
+                listener.downloadCompleted(destFile);
+            }
+        }
+
+        /**
+         * Run this download on the calling thread, for a job made with
+         * {@link #createJob(List, String, long, String, String)}. The file is
+         * not downloaded again if it is already there.
+         *
+         * @return the downloaded file
+         * @throws IOException thrown on I/O error
+         * @throws InterruptedException thrown on interruption
+         */
+        public File downloadNow() throws IOException, InterruptedException {
+            if (destFile.exists()) {
+                return destFile;
+            }
+
+            getHostLimiter();
+
+            synchronized (HttpDownloader.this) {
+                total += size;
+                running.add(this);
+            }
+
+            boolean successful = false;
+            try {
+                download();
+                successful = true;
+                return destFile;
+            } finally {
+                if (heldHost != null) {
+                    hostLimiter.release(heldHost);
+                    heldHost = null;
+                }
+                synchronized (HttpDownloader.this) {
+                    if (successful) {
+                        downloaded += size;
+                    } else {
+                        total -= size;
+                    }
                     running.remove(this);
+                    HttpDownloader.this.notifyAll();
                 }
             }
         }
 
+        /**
+         * Get the host that this job will most likely download from first,
+         * which is the host that it is scheduled against.
+         *
+         * @return the host name
+         */
+        private String getPreferredHost() {
+            return sourceTracker.rank(urls, size).get(0).getHost();
+        }
+
+        /**
+         * Move this job's host slot to the given host, if the slot is held
+         * for a different one, waiting for the host to have a free slot.
+         *
+         * @param host the host that is about to be downloaded from
+         * @throws InterruptedException thrown on interruption
+         */
+        private void switchHost(String host) throws InterruptedException {
+            if (!host.equals(heldHost)) {
+                if (heldHost != null) {
+                    hostLimiter.release(heldHost);
+                    synchronized (HttpDownloader.this) {
+                        HttpDownloader.this.notifyAll();
+                    }
+                    heldHost = null;
+                }
+                hostLimiter.acquire(host);
+                heldHost = host;
+            }
+        }
+
         private void download() throws IOException, InterruptedException {
             log.log(Level.INFO, "Downloading " + destFile + " from " + urls);
 
@@ -235,20 +556,18 @@ public class HttpDownloader implements Downloader {
 
         private void download(File file) throws IOException, InterruptedException {
             int trial = 0;
-            boolean first = true;
             IOException lastException = null;
 
             do {
-                for (URL url : urls) {
-                    // Sleep between each trial
-                    if (!first) {
-                        Thread.sleep((long) (retryDelay / 2 + (random.nextDouble() * retryDelay)));
-                    }
-                    first = false;
+                // Sleep between each round of trying every source, but fall
+                // through to the next source right away
+                if (trial > 0) {
+                    Thread.sleep((long) (retryDelay / 2 + (random.nextDouble() * retryDelay)));
+                }
 
+                for (URL url : getSourceOrder(file)) {
                     try {
-                        request = HttpRequest.get(url);
-                        request.execute().expectResponseCode(200).saveContent(file);
+                        download(url, file);
                         return;
                     } catch (IOException e) {
                         lastException = e;
@@ -260,8 +579,392 @@ public class HttpDownloader implements Downloader {
             throw new IOException("Failed to download from " + urls, lastException);
         }
 
+        /**
+         * Get the URLs to try in order, which is by the source tracker's
+         * ranking except that the URL of a partial download left in the
+         * file is tried first, as it is the only one it can be resumed from.
+         *
+         * @param file the file
+         * @return the URLs
+         */
+        private List<URL> getSourceOrder(File file) {
+            List<URL> ranked = sourceTracker.rank(urls, size);
+            HttpValidators previous = file.length() > 0 ? HttpValidators.read(file) : null;
+            if (previous != null) {
+                for (URL url : ranked) {
+                    if (previous.isFrom(url)) {
+                        ranked.remove(url);
+                        ranked.add(0, url);
+                        break;
+                    }
+                }
+            }
+            return ranked;
+        }
+
+        /**
+         * Download from the given URL, resuming a partial download left in
+         * the file by an earlier attempt if the server supports it (and the
+         * partial download came from the same URL).
+         *
+         * @param url the URL
+         * @param file the file
+         * @throws IOException on I/O error
+         * @throws InterruptedException on interruption
+         */
+        private void download(URL url, File file) throws IOException, InterruptedException {
+            HttpValidators previous = file.length() > 0 ? HttpValidators.read(file) : null;
+            String ifRange = previous != null && previous.isFrom(url) ? previous.getIfRange() : null;
+            long offset = ifRange != null ? file.length() : 0;
+
+            switchHost(url.getHost());
+
+            long start = System.currentTimeMillis();
+            boolean success = false;
+            boolean interrupted = false;
+            boolean missing = false;
+            request = null;
+            segments = null;
+            latency = 0;
+
+            try {
+                if (offset > 0 || size < segmentThreshold || !downloadSegmented(url, file)) {
+                    download(url, file, ifRange, offset);
+                }
+                success = true;
+            } catch (ClientErrorException e) {
+                missing = true;
+                throw e;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                throw e;
+            } finally {
+                long bytes = Math.max(0, getReadBytes() - offset);
+                long millis = System.currentTimeMillis() - start;
+                if (segments == null && !missing) {
+                    // Segmented downloads report each segment instead, and
+                    // a missing file says nothing about the host's load
+                    hostLimiter.report(url.getHost(), success, bytes, millis);
+                }
+                if (success) {
+                    sourceTracker.reportSuccess(url, latency, bytes, millis);
+                } else if (!interrupted && !missing) {
+                    // The source is fine if it just doesn't have this file
+                    sourceTracker.reportFailure(url);
+                }
+            }
+        }
+
+        /**
+         * Download a large file as several byte ranges fetched over separate
+         * connections at the same time, if the server supports ranges.
+         * <p/>
+         * Each segment after the first needs a free slot of its own on the
+         * host, so the file is split into no more segments than there are
+         * slots to spare.
+         *
+         * @param url the URL
+         * @param file the file
+         * @return true if the file was downloaded, false if it should be downloaded normally
+         * @throws IOException on I/O error
+         * @throws InterruptedException on interruption
+         */
+        private boolean downloadSegmented(URL url, File file) throws IOException, InterruptedException {
+            String host = url.getHost();
+            int extraSlots = 0;
+            while (extraSlots < segmentCount - 1 && hostLimiter.tryAcquire(host)) {
+                extraSlots++;
+            }
+
+            try {
+                return extraSlots > 0 && downloadSegmented(url, file, extraSlots + 1);
+            } finally {
+                for (int i = 0; i < extraSlots; i++) {
+                    hostLimiter.release(host);
+                }
+            }
+        }
+
+        private boolean downloadSegmented(final URL url, File file, int count)
+                throws IOException, InterruptedException {
+            final String host = url.getHost();
+
+            // The response to the first segment tells us the real size and
+            // whether ranges work, so no separate request is needed for that
+            final long firstEnd = (size + count - 1) / count - 1;
+            final HttpRequest first = HttpRequest.get(url)
+                    .header("Range", "bytes=0-" + firstEnd)
+                    .bandwidthLimiter(bandwidthLimiter);
+            request = first;
+            final long firstStart = System.currentTimeMillis();
+            first.execute();
+            latency = System.currentTimeMillis() - firstStart;
+
+            if (first.getResponseCode() == 200) {
+                // Ranges aren't supported, so this is the whole file
+                saveResponse(url, file, 0);
+                return true;
+            } else if (first.getResponseCode() != 206) {
+                first.close();
+                return false;
+            }
+
+            ContentRange firstRange = ContentRange.from(first);
+            final String ifRange = HttpValidators.from(first).getIfRange();
+            if (firstRange == null || firstRange.length < 0 || ifRange == null || first.isEncoded()) {
+                // The rest of the file can't be fetched safely in pieces
+                first.close();
+                return false;
+            }
+
+            final long length = firstRange.length;
+            final long firstTo = Math.min(firstEnd, length - 1);
+            if (firstRange.start != 0 || firstRange.end != firstTo) {
+                first.close();
+                throw new IOException("Got an unexpected range (" + firstRange + ") from " + url);
+            }
+
+            log.info("Downloading " + destFile + " (" + length + " bytes) in up to " + count + " segments");
+
+            HttpValidators.delete(file);
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            ExecutorService executor = Executors.newFixedThreadPool(count);
+            boolean successful = false;
+
+            try {
+                raf.setLength(length);
+                final FileChannel channel = raf.getChannel();
+                List<HttpRequest> requests = new ArrayList<HttpRequest>();
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+
+                requests.add(first);
+                futures.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        saveSegment(first, host, channel, 0, firstTo, firstStart);
+                        return null;
+                    }
+                }));
+
+                long remaining = length - firstTo - 1;
+                long segmentSize = (remaining + count - 2) / Math.max(1, count - 1);
+                for (long from = firstTo + 1; from < length; from += segmentSize) {
+                    final long position = from;
+                    final long to = Math.min(length, from + segmentSize) - 1;
+                    final HttpRequest segment = HttpRequest.get(url)
+                            .header("Range", "bytes=" + position + "-" + to)
+                            .header("If-Range", ifRange)
+                            .bandwidthLimiter(bandwidthLimiter);
+                    requests.add(segment);
+
+                    futures.add(executor.submit(new Callable<Object>() {
+                        @Override
+                        public Object call() throws Exception {
+                            long start = System.currentTimeMillis();
+                            boolean executed = false;
+                            try {
+                                segment.execute().expectResponseCode(206);
+                                executed = true;
+                            } finally {
+                                if (!executed) {
+                                    hostLimiter.report(host, false, 0, System.currentTimeMillis() - start);
+                                }
+                            }
+                            ContentRange range = ContentRange.from(segment);
+                            if (range == null || range.length != length) {
+                                segment.close();
+                                hostLimiter.report(host, false, 0, System.currentTimeMillis() - start);
+                                throw new IOException("Got an unexpected range (" + range + ") from " + url);
+                            }
+                            saveSegment(segment, host, channel, position, to, start);
+                            return null;
+                        }
+                    }));
+                }
+
+                segmentedLength = length;
+                segments = requests;
+
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+                        throw new IOException("Failed to download a segment of " + url, e.getCause());
+                    }
+                }
+
+                successful = true;
+            } finally {
+                executor.shutdownNow();
+                first.close();
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                }
+                if (!successful) {
+                    file.delete();
+                }
+            }
+
+            if (hash != null) {
+                String actual = FileHashing.sha1(file);
+                if (!actual.equalsIgnoreCase(hash)) {
+                    file.delete();
+                    throw new IOException("Expected SHA-1 " + hash + " but got " + actual + " from " + url);
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Write the body of a segment's response into its place in the file,
+         * making sure that the response is for exactly the requested range
+         * and that all of it arrived, since the file was allocated in full
+         * beforehand and a short segment would otherwise leave a hole.
+         *
+         * @param segment the executed request
+         * @param host the host, for reporting to the host limiter
+         * @param channel the channel of the file
+         * @param from the first byte of the segment
+         * @param to the last byte of the segment
+         * @param start the time that the request was made
+         * @throws IOException on I/O error
+         * @throws InterruptedException on interruption
+         */
+        private void saveSegment(HttpRequest segment, String host, FileChannel channel, long from, long to,
+                                 long start) throws IOException, InterruptedException {
+            boolean success = false;
+
+            try {
+                ContentRange range = ContentRange.from(segment);
+                if (range == null || range.start != from || range.end != to || segment.isEncoded()) {
+                    segment.close();
+                    throw new IOException("Got an unexpected range (" + range + ") for bytes " +
+                            from + "-" + to + " from " + segment.getUrl());
+                }
+
+                segment.saveContent(channel, from);
+
+                long expected = to - from + 1;
+                if (segment.getReadBytes() != expected) {
+                    throw new IOException("Got " + segment.getReadBytes() + " of " + expected + " bytes for bytes " +
+                            from + "-" + to + " from " + segment.getUrl());
+                }
+
+                success = true;
+            } finally {
+                hostLimiter.report(host, success, segment.getReadBytes(), System.currentTimeMillis() - start);
+            }
+        }
+
+        private void download(URL url, File file, String ifRange, long offset)
+                throws IOException, InterruptedException {
+            request = HttpRequest.get(url).bandwidthLimiter(bandwidthLimiter);
+            if (offset > 0) {
+                request.header("Range", "bytes=" + offset + "-");
+                request.header("If-Range", ifRange);
+            }
+            long start = System.currentTimeMillis();
+            request.execute();
+            latency = System.currentTimeMillis() - start;
+
+            saveResponse(url, file, offset);
+        }
+
+        /**
+         * Save the response of the executed {@link #request} to the file.
+         *
+         * @param url the URL
+         * @param file the file
+         * @param offset the position that the download was resumed from, or 0
+         * @throws IOException on I/O error
+         * @throws InterruptedException on interruption
+         */
+        private void saveResponse(URL url, File file, long offset) throws IOException, InterruptedException {
+            HttpRequest request = this.request;
+
+            if (request.getResponseCode() == 416) {
+                // The partial file is no good, so start over on the next attempt
+                HttpValidators.delete(file);
+                file.delete();
+                request.close();
+                throw new IOException("Could not resume the download from " + url);
+            }
+
+            int code = request.getResponseCode();
+            if (code >= 400 && code < 500 && code != 408 && code != 429) {
+                request.close();
+                throw new ClientErrorException("Got response code " + code + " for " + url);
+            }
+
+            request.expectResponseCode(200, 206);
+
+            boolean append = false;
+            if (request.getResponseCode() == 206) {
+                ContentRange range = ContentRange.from(request);
+                if (range == null || range.start != offset) {
+                    HttpValidators.delete(file);
+                    file.delete();
+                    request.close();
+                    throw new IOException("Got an unexpected range from " + url);
+                }
+                log.info("Resuming download of " + destFile + " from byte " + offset);
+                append = true;
+            }
+
+            // Remember the validators before reading the body so that a
+            // partial download can be resumed on the next attempt (but ranges
+            // of a compressed response don't line up with the saved file)
+            HttpValidators validators = HttpValidators.from(request);
+            if (validators.getIfRange() != null && !request.isEncoded()) {
+                validators.write(file);
+            } else {
+                HttpValidators.delete(file);
+            }
+
+            MessageDigest digest = null;
+            if (hash != null) {
+                digest = FileHashing.createDigest();
+                if (append) {
+                    FileHashing.update(digest, file);
+                }
+                request.digest(digest);
+            }
+
+            request.saveContent(file, append);
+            HttpValidators.delete(file);
+
+            if (digest != null) {
+                String actual = HashCode.fromBytes(digest.digest()).toString();
+                if (!actual.equalsIgnoreCase(hash)) {
+                    file.delete();
+                    throw new IOException("Expected SHA-1 " + hash + " but got " + actual + " from " + url);
+                }
+            }
+        }
+
+        private long getReadBytes() {
+            List<HttpRequest> segments = this.segments;
+            if (segments != null) {
+                long bytes = 0;
+                for (HttpRequest segment : segments) {
+                    bytes += segment.getReadBytes();
+                }
+                return bytes;
+            }
+
+            HttpRequest request = this.request;
+            return request != null ? request.getReadBytes() : 0;
+        }
+
         @Override
         public double getProgress() {
+            if (segments != null) {
+                return getReadBytes() / (double) Math.max(1, segmentedLength);
+            }
+
             HttpRequest request = this.request;
             return request != null ? request.getProgress() : -1;
         }
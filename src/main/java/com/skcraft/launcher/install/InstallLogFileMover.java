@@ -11,6 +11,8 @@ import lombok.extern.java.Log;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.logging.Level;
 
 import static com.skcraft.launcher.util.SharedLocale._;
@@ -37,6 +39,11 @@ public class InstallLogFileMover implements InstallTask {
         installLog.add(to, to);
     }
 
+    @Override
+    public Collection<File> getTargets() {
+        return Collections.singletonList(to);
+    }
+
     @Override
     public double getProgress() {
         return -1;
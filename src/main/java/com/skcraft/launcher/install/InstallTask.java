@@ -8,8 +8,20 @@ package com.skcraft.launcher.install;
 
 import com.skcraft.concurrency.ProgressObservable;
 
+import java.io.File;
+import java.util.Collection;
+
 public interface InstallTask extends ProgressObservable {
 
     void execute() throws Exception;
 
+    /**
+     * Get the files that the task writes to. Tasks that write to the same
+     * file are never run at the same time, and run in the order that they
+     * were queued.
+     *
+     * @return the files
+     */
+    Collection<File> getTargets();
+
 }
@@ -9,77 +9,279 @@ package com.skcraft.launcher.install;
 import com.skcraft.concurrency.ProgressObservable;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.extern.java.Log;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
 
 import static com.skcraft.launcher.LauncherUtils.checkInterrupted;
 import static com.skcraft.launcher.util.SharedLocale._;
 
+/**
+ * Runs the download phase and then the install phase of an update.
+ * <p/>
+ * Install tasks run concurrently on a bounded pool of I/O threads. A task
+ * waits only for the tasks queued before it that write to one of the same
+ * files (or use the same download), so the order of writes to each file is
+ * the order the tasks were queued in. Tasks queued with
+ * {@link #queue(InstallTask, File)} can start as soon as their download
+ * completes, overlapping the install work with the rest of the downloads;
+ * other tasks start when {@link #execute()} is called.
+ * <p/>
+ * If any task fails, no more tasks are started, running tasks are
+ * interrupted, and the failure is thrown from {@link #execute()}.
+ */
 @Log
-public class Installer implements ProgressObservable {
+public class Installer implements ProgressObservable, HttpDownloader.Listener {
 
     @Getter private final File tempDir;
     private final HttpDownloader downloader;
-    private InstallTask running;
-    private int count = 0;
-    private int finished = 0;
+    @Getter @Setter private ObjectStore objectStore;
+    @Getter @Setter private int ioThreadCount = 4;
+    private volatile boolean downloading;
 
-    private List<InstallTask> queue = new ArrayList<InstallTask>();
+    private final List<Node> queue = new ArrayList<Node>();
+    private final Map<String, Node> lastWriters = new HashMap<String, Node>();
+    private final Map<File, List<Node>> pending = new HashMap<File, List<Node>>();
+    private final Set<Node> running = new LinkedHashSet<Node>();
+    private ExecutorService ioExecutor;
+    private int finished = 0;
+    private Exception failure;
 
     public Installer(@NonNull File tempDir) {
         this.tempDir = tempDir;
         this.downloader = new HttpDownloader(tempDir);
+        this.downloader.setListener(this);
+    }
+
+    public void queue(@NonNull InstallTask runnable) {
+        queue(runnable, null);
     }
 
-    public synchronized void queue(@NonNull InstallTask runnable) {
-        queue.add(runnable);
-        count++;
+    /**
+     * Queue a task that only needs the given download to have completed,
+     * so that it can be run as soon as the file has been downloaded.
+     *
+     * @param runnable the task
+     * @param download the file returned by the downloader, or null
+     */
+    public synchronized void queue(@NonNull InstallTask runnable, File download) {
+        Node node = new Node(runnable);
+        queue.add(node);
+
+        Set<String> keys = new HashSet<String>();
+        for (File target : runnable.getTargets()) {
+            keys.add(target.getAbsolutePath());
+        }
+        if (download != null) {
+            keys.add(download.getAbsolutePath());
+        }
+
+        for (String key : keys) {
+            Node previous = lastWriters.put(key, node);
+            if (previous != null && !previous.done && previous.dependents.add(node)) {
+                node.waiting++;
+            }
+        }
+
+        if (download != null && downloader.isQueued(download)) {
+            List<Node> nodes = pending.get(download);
+            if (nodes == null) {
+                nodes = new ArrayList<Node>();
+                pending.put(download, nodes);
+            }
+            nodes.add(node);
+        }
     }
 
     public void download() throws IOException, InterruptedException {
-        downloader.execute();
+        boolean successful = false;
+        downloading = true;
+
+        try {
+            downloader.execute();
+            successful = true;
+        } finally {
+            downloading = false;
+            if (!successful) {
+                cancel();
+            }
+        }
     }
 
-    public synchronized void execute() throws Exception {
-        queue = Collections.unmodifiableList(queue);
+    @Override
+    public synchronized void downloadCompleted(File file) {
+        List<Node> nodes = pending.remove(file);
+        if (nodes != null) {
+            for (Node node : nodes) {
+                release(node);
+            }
+        }
+    }
 
+    public synchronized void execute() throws Exception {
         try {
-            for (InstallTask runnable : queue) {
-                checkInterrupted();
-                running = runnable;
-                runnable.execute();
-                finished++;
+            for (Node node : queue) {
+                release(node);
+            }
+
+            while (failure == null && finished < queue.size()) {
+                wait();
+            }
+
+            if (failure != null) {
+                throw failure;
             }
         } finally {
-            running = null;
+            shutdown();
+        }
+    }
+
+    private void release(Node node) {
+        if (!node.released) {
+            node.released = true;
+            submitIfReady(node);
         }
     }
 
-    public Downloader getDownloader() {
+    private void submitIfReady(final Node node) {
+        if (failure != null || !node.released || node.waiting > 0) {
+            return;
+        }
+
+        if (ioExecutor != null && ioExecutor.isShutdown()) {
+            return;
+        }
+
+        if (ioExecutor == null) {
+            ioExecutor = Executors.newFixedThreadPool(ioThreadCount);
+        }
+
+        running.add(node);
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Exception error = null;
+                try {
+                    checkInterrupted();
+                    node.task.execute();
+                } catch (Exception e) {
+                    error = e;
+                } catch (Error e) {
+                    error = new RuntimeException(e);
+                }
+                completed(node, error);
+            }
+        });
+    }
+
+    private synchronized void completed(Node node, Exception error) {
+        running.remove(node);
+
+        if (error != null) {
+            if (failure == null) {
+                failure = error;
+                log.log(Level.WARNING, "Install task failed; cancelling the rest", error);
+                ioExecutor.shutdownNow();
+            }
+        } else {
+            node.done = true;
+            finished++;
+            for (Node dependent : node.dependents) {
+                dependent.waiting--;
+                submitIfReady(dependent);
+            }
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * Stop tasks from being started by downloads that are still completing
+     * after the download phase has failed.
+     */
+    private synchronized void cancel() {
+        if (failure == null) {
+            failure = new IOException("The downloads did not complete");
+        }
+        shutdown();
+    }
+
+    private synchronized void shutdown() {
+        if (ioExecutor != null) {
+            ioExecutor.shutdownNow();
+        }
+    }
+
+    public HttpDownloader getDownloader() {
         return downloader;
     }
 
     @Override
     public double getProgress() {
-        return finished / (double) count;
+        if (downloading) {
+            return downloader.getProgress();
+        }
+
+        synchronized (this) {
+            if (queue.isEmpty()) {
+                return -1;
+            }
+
+            double progress = finished;
+            for (Node node : running) {
+                double taskProgress = node.task.getProgress();
+                if (taskProgress > 0) {
+                    progress += Math.min(1, taskProgress);
+                }
+            }
+            return progress / queue.size();
+        }
     }
 
     @Override
     public String getStatus() {
-        InstallTask running = this.running;
-        if (running != null) {
-            String status = running.getStatus();
+        int finished;
+        int count;
+        InstallTask task = null;
+
+        synchronized (this) {
+            finished = this.finished;
+            count = queue.size();
+            if (!running.isEmpty()) {
+                task = running.iterator().next().task;
+            }
+        }
+
+        if (downloading) {
+            return downloader.getStatus() + "\n" + _("installer.installedCount", finished, count);
+        }
+
+        if (task != null) {
+            String status = task.getStatus();
             if (status == null) {
-                status = running.toString();
+                status = task.toString();
             }
             return _("installer.executing", count - finished) + "\n" + status;
         } else {
             return _("installer.installing");
         }
     }
+
+    private static class Node {
+        private final InstallTask task;
+        private final Set<Node> dependents = new LinkedHashSet<Node>();
+        private int waiting;
+        private boolean released;
+        private boolean done;
+
+        private Node(InstallTask task) {
+            this.task = task;
+        }
+    }
 }
@@ -0,0 +1,181 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.install;
+
+import com.google.common.io.Files;
+import com.skcraft.launcher.util.HardLink;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.java.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * A launcher-wide store of package files keyed by their SHA-1 hash, so
+ * that files shared between instances are only downloaded and stored once.
+ * </p>
+ * Objects are placed into instances either with a hard link (when
+ * supported and requested) or with a copy. Hard links share their contents
+ * with the store, so they should only be used for files that the game
+ * never writes to.
+ */
+@Log
+public class ObjectStore {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long GARBAGE_MIN_AGE = 24 * 60 * 60 * 1000;
+
+    @Getter
+    private final File dir;
+
+    /**
+     * Create a new object store.
+     *
+     * @param dir the directory to store objects in
+     */
+    public ObjectStore(@NonNull File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Get the path to the object with the given hash.
+     *
+     * @param hash the SHA-1 hash
+     * @return the file, which may not exist
+     */
+    public File getObjectPath(@NonNull String hash) {
+        String id = hash.toLowerCase();
+        return new File(dir, id.substring(0, 2) + "/" + id);
+    }
+
+    /**
+     * Check whether the store has the object with the given hash.
+     *
+     * @param hash the SHA-1 hash
+     * @return true if the object exists
+     */
+    public boolean contains(@NonNull String hash) {
+        return getObjectPath(hash).exists();
+    }
+
+    /**
+     * Move the given file into the store. If the store already contains an
+     * object with the given hash, the file is deleted instead.
+     *
+     * @param file the file, whose contents must match the hash
+     * @param hash the SHA-1 hash
+     * @throws IOException on I/O error
+     */
+    public synchronized void add(@NonNull File file, @NonNull String hash) throws IOException {
+        File objectPath = getObjectPath(hash);
+
+        if (objectPath.exists()) {
+            file.delete();
+            return;
+        }
+
+        objectPath.getParentFile().mkdirs();
+        if (!file.renameTo(objectPath)) {
+            // Copy next to the object first so that an interrupted copy
+            // never leaves a truncated file under the object's name
+            File tempFile = File.createTempFile("object", TEMP_SUFFIX, objectPath.getParentFile());
+            try {
+                Files.copy(file, tempFile);
+                if (!tempFile.renameTo(objectPath)) {
+                    throw new IOException("Failed to rename " + tempFile + " to " + objectPath);
+                }
+            } finally {
+                tempFile.delete();
+            }
+            file.delete();
+        }
+    }
+
+    /**
+     * Delete the objects that aren't in the given set of hashes, along with
+     * any temporary files left behind by interrupted installs.
+     * <p/>
+     * Files that were added or modified recently are kept, so that objects
+     * added by an install that is still running aren't removed before the
+     * install is finished with them. Files in instances that were hard
+     * linked to a deleted object are not affected.
+     *
+     * @param keep the hashes of the objects to keep
+     * @return the number of files deleted
+     */
+    public synchronized int collectGarbage(@NonNull Set<String> keep) {
+        Set<String> keepIds = new HashSet<String>();
+        for (String hash : keep) {
+            keepIds.add(hash.toLowerCase());
+        }
+
+        long cutoff = System.currentTimeMillis() - GARBAGE_MIN_AGE;
+        int deleted = 0;
+        long deletedSize = 0;
+
+        File[] dirs = dir.listFiles();
+        if (dirs != null) {
+            for (File subDir : dirs) {
+                File[] files = subDir.listFiles();
+                if (files == null) {
+                    continue;
+                }
+
+                for (File file : files) {
+                    String name = file.getName();
+                    boolean object = name.length() == 40 && name.startsWith(subDir.getName());
+                    boolean temp = name.endsWith(TEMP_SUFFIX);
+                    if ((object && !keepIds.contains(name) || temp) && file.lastModified() < cutoff) {
+                        long size = file.length();
+                        if (file.delete()) {
+                            deleted++;
+                            deletedSize += size;
+                        }
+                    }
+                }
+
+                subDir.delete(); // Only if empty
+            }
+        }
+
+        log.log(Level.INFO, "Deleted {0} unused file(s) ({1} bytes) from {2}",
+                new Object[]{deleted, deletedSize, dir.getAbsolutePath()});
+
+        return deleted;
+    }
+
+    /**
+     * Place a copy of the object with the given hash at the target path,
+     * replacing any existing file.
+     *
+     * @param hash the SHA-1 hash
+     * @param target the target file
+     * @param link true to try to hard link before falling back to a copy
+     * @throws IOException on I/O error
+     */
+    public void materialize(@NonNull String hash, @NonNull File target, boolean link) throws IOException {
+        File objectPath = getObjectPath(hash);
+
+        target.getParentFile().mkdirs();
+        // The old file may be a hard link to an object, so copying over it
+        // would change the object for every instance that links to it
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Failed to delete " + target + " to replace it");
+        }
+
+        if (link && HardLink.create(target, objectPath)) {
+            log.log(Level.FINE, "Linked {0} to {1}", new Object[]{target, objectPath});
+        } else {
+            Files.copy(objectPath, target);
+        }
+    }
+
+}
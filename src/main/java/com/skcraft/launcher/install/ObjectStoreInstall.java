@@ -0,0 +1,79 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.install;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.logging.Level;
+
+import static com.skcraft.launcher.util.SharedLocale._;
+
+/**
+ * Installs a file from the {@link ObjectStore}, first adding a freshly
+ * downloaded copy of the object to the store if one was given.
+ */
+@Log
+public class ObjectStoreInstall implements InstallTask {
+
+    private final InstallLog installLog;
+    private final ObjectStore store;
+    private final String hash;
+    private final File from;
+    private final File to;
+    private final boolean link;
+
+    /**
+     * Create a new task.
+     *
+     * @param installLog the install log
+     * @param store the object store
+     * @param hash the SHA-1 hash of the object
+     * @param from the downloaded file to add to the store, or null if the store already has it
+     * @param to the target file
+     * @param link true to hard link the object into place if possible
+     */
+    public ObjectStoreInstall(@NonNull InstallLog installLog, @NonNull ObjectStore store, @NonNull String hash,
+                              File from, @NonNull File to, boolean link) {
+        this.installLog = installLog;
+        this.store = store;
+        this.hash = hash;
+        this.from = from;
+        this.to = to;
+        this.link = link;
+    }
+
+    @Override
+    public void execute() throws IOException {
+        log.log(Level.INFO, "Installing to {0} (from object {1})...", new Object[]{to.getAbsoluteFile(), hash});
+        if (from != null) {
+            store.add(from, hash);
+        }
+        store.materialize(hash, to, link);
+        installLog.add(to, to);
+    }
+
+    @Override
+    public Collection<File> getTargets() {
+        return Collections.singletonList(to);
+    }
+
+    @Override
+    public double getProgress() {
+        return -1;
+    }
+
+    @Override
+    public String getStatus() {
+        return _("installer.copyingFile", hash, to);
+    }
+
+}
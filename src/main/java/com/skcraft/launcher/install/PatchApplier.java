@@ -0,0 +1,157 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.install;
+
+import com.google.common.io.Files;
+import com.skcraft.launcher.util.BinaryDelta;
+import com.skcraft.launcher.util.FileHashing;
+import lombok.NonNull;
+import lombok.extern.java.Log;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.logging.Level;
+
+import static com.skcraft.launcher.util.SharedLocale._;
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+/**
+ * Installs a file by applying a downloaded {@link BinaryDelta} to the
+ * existing version of the file, falling back to downloading the full file
+ * if the patch wasn't downloaded, can't be applied or its result doesn't
+ * match the expected hash.
+ */
+@Log
+public class PatchApplier implements InstallTask {
+
+    private final InstallLog installLog;
+    private final ObjectStore store;
+    private final File patch;
+    private final HttpDownloader.HttpDownloadJob fallback;
+    private final String hash;
+    private final File to;
+    private final boolean link;
+    private volatile boolean downloading;
+
+    /**
+     * Create a new task.
+     *
+     * @param installLog the install log
+     * @param store the object store to add the result to, or null to not use one
+     * @param patch the downloaded patch
+     * @param fallback the download of the full file, which is only run if patching fails
+     * @param hash the SHA-1 hash of the full file
+     * @param to the target file, which is also the file that the patch applies to
+     * @param link true to hard link the object into place if possible
+     */
+    public PatchApplier(@NonNull InstallLog installLog, ObjectStore store, @NonNull File patch,
+                        @NonNull HttpDownloader.HttpDownloadJob fallback, @NonNull String hash, @NonNull File to, boolean link) {
+        this.installLog = installLog;
+        this.store = store;
+        this.patch = patch;
+        this.fallback = fallback;
+        this.hash = hash;
+        this.to = to;
+        this.link = link;
+    }
+
+    @Override
+    public void execute() throws Exception {
+        log.log(Level.INFO, "Patching {0} (from {1})...", new Object[]{to.getAbsoluteFile(), patch.getName()});
+
+        File result = new File(patch.getParentFile(), patch.getName() + ".out");
+
+        try {
+            boolean patched = false;
+            if (!patch.exists()) {
+                log.log(Level.WARNING, "The patch for {0} was not downloaded; downloading the full file instead", to);
+            } else {
+                try {
+                    applyPatch(result);
+                    patched = true;
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Failed to patch " + to + "; downloading the full file instead", e);
+                }
+            }
+
+            if (!patched) {
+                download(result);
+            }
+        } finally {
+            patch.delete();
+        }
+
+        if (store != null) {
+            store.add(result, hash);
+            store.materialize(hash, to, link);
+        } else {
+            to.getParentFile().mkdirs();
+            to.delete();
+            if (!result.renameTo(to)) {
+                Files.move(result, to);
+            }
+        }
+
+        installLog.add(to, to);
+    }
+
+    private void applyPatch(File result) throws IOException {
+        InputStream in = null;
+        OutputStream out = null;
+
+        try {
+            in = new BufferedInputStream(new FileInputStream(patch));
+            out = new BufferedOutputStream(new FileOutputStream(result));
+            BinaryDelta.apply(to, in, out);
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+        }
+
+        verify(result);
+    }
+
+    private void download(File result) throws IOException, InterruptedException {
+        downloading = true;
+        try {
+            File file = fallback.downloadNow();
+            result.delete();
+            if (!file.renameTo(result)) {
+                Files.move(file, result);
+            }
+        } finally {
+            downloading = false;
+        }
+
+        verify(result);
+    }
+
+    private void verify(File result) throws IOException {
+        String actual = FileHashing.sha1(result);
+        if (!actual.equalsIgnoreCase(hash)) {
+            result.delete();
+            throw new IOException("Expected SHA-1 " + hash + " but got " + actual + " for " + to);
+        }
+    }
+
+    @Override
+    public Collection<File> getTargets() {
+        return Collections.singletonList(to);
+    }
+
+    @Override
+    public double getProgress() {
+        return downloading ? fallback.getProgress() : -1;
+    }
+
+    @Override
+    public String getStatus() {
+        return downloading ? fallback.getStatus() : _("installer.patchingFile", to);
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.install;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ComparisonChain;
+import lombok.NonNull;
+import lombok.extern.java.Log;
+
+import java.net.URL;
+import java.util.*;
+import java.util.logging.Level;
+
+/**
+ * Keeps track of how well each download source (a scheme, host and port)
+ * has performed during the session, so that the URLs of a download can be
+ * tried fastest source first.
+ * <p/>
+ * Each source has a moving average of its response latency, throughput
+ * and failure rate. After several failures in a row, a source's circuit
+ * breaker opens and the source is skipped until a cool-down period has
+ * passed, after which it is given one more chance. Until then, its URLs
+ * are tried last rather than not at all, since some files may only be
+ * available from that source. Sources that haven't been used yet are tried
+ * first so that they get measured.
+ */
+@Log
+public class SourceTracker {
+
+    private static final double ALPHA = 0.3;
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long MIN_COOLDOWN = 15 * 1000;
+    private static final long MAX_COOLDOWN = 5 * 60 * 1000;
+    private static final double FAILURE_PENALTY = 10 * 1000;
+    private static final long SMALL_TRANSFER = 64 * 1024;
+
+    private final Map<String, Source> sources = new HashMap<String, Source>();
+
+    private Source get(URL url) {
+        String key = getKey(url);
+        Source source = sources.get(key);
+        if (source == null) {
+            source = new Source();
+            sources.put(key, source);
+        }
+        return source;
+    }
+
+    /**
+     * Get the URLs to try, in order of the expected time to download from
+     * each. URLs of sources whose circuit breaker is open come last, in
+     * the order that their breakers will close.
+     *
+     * @param urls the candidate URLs
+     * @param size the expected size of the download, in bytes
+     * @return the URLs to try, in order
+     */
+    public synchronized List<URL> rank(@NonNull List<URL> urls, long size) {
+        long now = System.currentTimeMillis();
+        final Map<URL, Double> costs = new HashMap<URL, Double>();
+        final Map<URL, Long> openUntil = new HashMap<URL, Long>();
+        List<URL> ranked = new ArrayList<URL>(urls);
+
+        for (URL url : urls) {
+            Source source = get(url);
+            costs.put(url, source.getCost(size));
+            openUntil.put(url, source.openUntil > now ? source.openUntil : 0);
+        }
+
+        Collections.sort(ranked, new Comparator<URL>() {
+            @Override
+            public int compare(URL o1, URL o2) {
+                return ComparisonChain.start()
+                        .compare(openUntil.get(o1), openUntil.get(o2))
+                        .compare(costs.get(o1), costs.get(o2))
+                        .result();
+            }
+        });
+
+        return ranked;
+    }
+
+    /**
+     * Record a successful download.
+     *
+     * @param url the URL
+     * @param latency the time until the response was received, in milliseconds
+     * @param bytes the number of bytes transferred
+     * @param millis the time taken for the whole download, in milliseconds
+     */
+    public synchronized void reportSuccess(@NonNull URL url, long latency, long bytes, long millis) {
+        Source source = get(url);
+
+        source.latency = source.samples > 0 ? source.latency * (1 - ALPHA) + latency * ALPHA : latency;
+        if (bytes >= SMALL_TRANSFER) {
+            double rate = bytes / (double) Math.max(1, millis - latency);
+            source.rate = source.rate > 0 ? source.rate * (1 - ALPHA) + rate * ALPHA : rate;
+        }
+        source.failureRate *= 1 - ALPHA;
+        source.samples++;
+
+        if (source.consecutiveFailures >= FAILURE_THRESHOLD) {
+            log.log(Level.INFO, "{0} is working again", getKey(url));
+        }
+        source.consecutiveFailures = 0;
+        source.cooldown = 0;
+        source.openUntil = 0;
+    }
+
+    /**
+     * Record a failed download.
+     *
+     * @param url the URL
+     */
+    public synchronized void reportFailure(@NonNull URL url) {
+        Source source = get(url);
+
+        source.failureRate = source.failureRate * (1 - ALPHA) + ALPHA;
+        source.consecutiveFailures++;
+
+        if (source.consecutiveFailures >= FAILURE_THRESHOLD) {
+            source.cooldown = source.cooldown > 0 ? Math.min(MAX_COOLDOWN, source.cooldown * 2) : MIN_COOLDOWN;
+            source.openUntil = System.currentTimeMillis() + source.cooldown;
+            log.log(Level.WARNING, "Skipping {0} for {1} seconds after {2} failures in a row",
+                    new Object[]{getKey(url), source.cooldown / 1000, source.consecutiveFailures});
+        }
+    }
+
+    private static String getKey(URL url) {
+        return url.getProtocol() + "://" + Strings.nullToEmpty(url.getAuthority());
+    }
+
+    private static class Source {
+        private int samples;
+        private double latency;
+        private double rate;
+        private double failureRate;
+        private int consecutiveFailures;
+        private long cooldown;
+        private long openUntil;
+
+        /**
+         * Get the expected time to download a file of the given size.
+         *
+         * @param size the size, in bytes
+         * @return the cost, in milliseconds
+         */
+        private double getCost(long size) {
+            double cost = failureRate * FAILURE_PENALTY;
+            if (samples > 0) {
+                cost += latency;
+                if (rate > 0) {
+                    cost += size / rate;
+                }
+            }
+            return cost;
+        }
+    }
+
+}
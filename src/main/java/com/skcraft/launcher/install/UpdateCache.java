@@ -6,16 +6,28 @@
 
 package com.skcraft.launcher.install;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.NonNull;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
 @Data
 public class UpdateCache {
 
+    /**
+     * Files modified this recently may still be changing without their
+     * size or modification time changing (given the resolution of some
+     * file systems), so their state isn't trusted.
+     */
+    private static final long RACY_INTERVAL = 2000;
+
     private Map<String, String> cache = new HashMap<String, String>();
+    private Map<String, FileState> files = new HashMap<String, FileState>();
+    @JsonIgnore
+    private Map<String, String> installed = new HashMap<String, String>();
 
     public synchronized boolean mark(@NonNull String key, @NonNull String version) {
         String current = cache.get(key);
@@ -26,4 +38,81 @@ public class UpdateCache {
             return true;
         }
     }
+
+    /**
+     * Get the hash of a file that was verified earlier, if the file's size
+     * and modification time haven't changed since then.
+     *
+     * @param key the path of the file, relative to the content directory
+     * @param file the file
+     * @return the hash, or null if the file has to be hashed again
+     */
+    public synchronized String getVerifiedHash(@NonNull String key, @NonNull File file) {
+        FileState state = files.get(key);
+        if (state != null && state.getSize() == file.length() && state.getModified() == file.lastModified()) {
+            return state.getHash();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Record the hash of a file along with the file's current size and
+     * modification time.
+     *
+     * @param key the path of the file, relative to the content directory
+     * @param file the file
+     * @param hash the hash of the file's contents
+     */
+    public synchronized void setVerifiedHash(@NonNull String key, @NonNull File file, @NonNull String hash) {
+        long modified = file.lastModified();
+        if (modified > 0 && System.currentTimeMillis() - modified >= RACY_INTERVAL) {
+            FileState state = new FileState();
+            state.setSize(file.length());
+            state.setModified(modified);
+            state.setHash(hash);
+            files.put(key, state);
+        } else {
+            files.remove(key);
+        }
+    }
+
+    /**
+     * Note that a file with the given hash is being installed, so that its
+     * state can be recorded with {@link #recordInstalled(File)} once the
+     * install has completed.
+     *
+     * @param key the path of the file, relative to the content directory
+     * @param hash the hash of the file being installed
+     */
+    public synchronized void setInstalling(@NonNull String key, @NonNull String hash) {
+        files.remove(key);
+        installed.put(key, hash);
+    }
+
+    /**
+     * Record the state of the files noted with {@link #setInstalling(String, String)}.
+     *
+     * @param contentDir the content directory
+     */
+    public synchronized void recordInstalled(@NonNull File contentDir) {
+        for (Map.Entry<String, String> entry : installed.entrySet()) {
+            File file = new File(contentDir, entry.getKey());
+            if (file.exists()) {
+                setVerifiedHash(entry.getKey(), file, entry.getValue());
+            }
+        }
+        installed.clear();
+    }
+
+    /**
+     * The size, modification time and verified hash of a file.
+     */
+    @Data
+    public static class FileState {
+        private long size;
+        private long modified;
+        private String hash;
+    }
+
 }
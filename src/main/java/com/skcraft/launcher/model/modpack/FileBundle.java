@@ -0,0 +1,110 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.model.modpack;
+
+import com.skcraft.launcher.install.BundleExtractor;
+import com.skcraft.launcher.install.InstallLog;
+import com.skcraft.launcher.install.Installer;
+import com.skcraft.launcher.install.ObjectStore;
+import com.skcraft.launcher.install.UpdateCache;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.skcraft.launcher.LauncherUtils.concat;
+
+/**
+ * A group of small files that are downloaded together as a single zip
+ * archive, named in the archive by their hash, to save making a request
+ * for each file.
+ * <p/>
+ * Only the files that need to be installed are extracted from the
+ * archive. If only a small part of the archive is needed, the files are
+ * downloaded individually instead, so they must still be available as
+ * separate objects.
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class FileBundle extends ManifestEntry {
+
+    public static final int MIN_PROTOCOL_VERSION = 4;
+
+    private String hash;
+    private String location;
+    private long size;
+    private List<FileInstall> files = new ArrayList<FileInstall>();
+
+    @Override
+    public void prepare(@NonNull UpdateCache cache, @NonNull File contentDir) throws IOException {
+        if (getWhen() != null && !getWhen().matches()) {
+            return;
+        }
+
+        for (FileInstall file : files) {
+            file.prepare(cache, contentDir);
+        }
+    }
+
+    @Override
+    public void install(@NonNull Installer installer, @NonNull InstallLog log,
+                        @NonNull UpdateCache cache, @NonNull File contentDir) throws IOException {
+        if (getWhen() != null && !getWhen().matches()) {
+            return;
+        }
+
+        ObjectStore store = installer.getObjectStore();
+        List<FileInstall> needed = new ArrayList<FileInstall>();
+        long neededSize = 0;
+
+        for (FileInstall file : files) {
+            file.setManifest(getManifest());
+
+            if (file.getWhen() != null && !file.getWhen().matches()) {
+                continue;
+            }
+
+            File targetFile = new File(contentDir, file.getTargetPath());
+            if (!file.shouldUpdate(cache, targetFile)) {
+                log.add(file.getTo(), file.getTo());
+            } else if (store != null && file.getHash() != null && store.contains(file.getHash())) {
+                file.update(installer, log, cache, targetFile);
+            } else {
+                needed.add(file);
+                neededSize += file.getSize();
+            }
+        }
+
+        if (needed.isEmpty()) {
+            return;
+        }
+
+        if (neededSize * 2 < size) {
+            for (FileInstall file : needed) {
+                file.update(installer, log, cache, new File(contentDir, file.getTargetPath()));
+            }
+        } else {
+            URL url = concat(getManifest().getObjectsUrl(), location);
+            File tempFile = installer.getDownloader().download(
+                    Collections.singletonList(url), hash, size, location, hash);
+
+            BundleExtractor extractor = new BundleExtractor(log, store, tempFile);
+            for (FileInstall file : needed) {
+                cache.setInstalling(file.getCacheKey(), file.getHash());
+                extractor.addMember(file.getHash(), new File(contentDir, file.getTargetPath()), file.isLinkable());
+            }
+            installer.queue(extractor, tempFile);
+        }
+    }
+
+}
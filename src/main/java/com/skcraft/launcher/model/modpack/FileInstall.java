@@ -7,13 +7,14 @@
 package com.skcraft.launcher.model.modpack;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
-import com.google.common.io.Files;
 import com.skcraft.launcher.install.InstallLog;
 import com.skcraft.launcher.install.InstallLogFileMover;
+import com.skcraft.launcher.install.InstallTask;
 import com.skcraft.launcher.install.Installer;
+import com.skcraft.launcher.install.ObjectStore;
+import com.skcraft.launcher.install.ObjectStoreInstall;
 import com.skcraft.launcher.install.UpdateCache;
+import com.skcraft.launcher.util.FileHashing;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
@@ -22,6 +23,7 @@ import org.apache.commons.io.FilenameUtils;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Collections;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.skcraft.launcher.LauncherUtils.concat;
@@ -30,7 +32,6 @@ import static com.skcraft.launcher.LauncherUtils.concat;
 @EqualsAndHashCode(callSuper = false)
 public class FileInstall extends ManifestEntry {
 
-    private static HashFunction hf = Hashing.sha1();
     private String version;
     private String hash;
     private String location;
@@ -57,23 +58,87 @@ public class FileInstall extends ManifestEntry {
 
         String targetPath = getTargetPath();
         File targetFile = new File(contentDir, targetPath);
+
+        if (shouldUpdate(cache, targetFile)) {
+            update(installer, log, cache, targetFile);
+        } else {
+            log.add(to, to);
+        }
+    }
+
+    @Override
+    public void prepare(@NonNull UpdateCache cache, @NonNull File contentDir) throws IOException {
+        if (getWhen() != null && !getWhen().matches()) {
+            return;
+        }
+
+        File targetFile = new File(contentDir, getTargetPath());
+        if (hash != null && !isUserFile() && targetFile.exists()) {
+            getExistingHash(cache, targetFile);
+        }
+    }
+
+    /**
+     * Queue the download and installation of the file.
+     *
+     * @param installer the installer
+     * @param log the install log
+     * @param cache the update cache
+     * @param targetFile the file to install to
+     * @throws IOException on I/O error
+     */
+    protected void update(Installer installer, InstallLog log, UpdateCache cache, File targetFile)
+            throws IOException {
+        if (hash != null) {
+            cache.setInstalling(getCacheKey(), hash);
+        }
+
         String fileVersion = getImpliedVersion();
         URL url = concat(getManifest().getObjectsUrl(), getLocation());
 
-        if (shouldUpdate(cache, targetFile)) {
-            long size = this.size;
-            if (size <= 0) {
-                size = 10 * 1024;
-            }
+        long size = this.size;
+        if (size <= 0) {
+            size = 10 * 1024;
+        }
 
-            File tempFile = installer.getDownloader().download(url, fileVersion, size, to);
-            installer.queue(new InstallLogFileMover(log, tempFile, targetFile));
+        ObjectStore store = installer.getObjectStore();
+        if (store != null && hash != null) {
+            File tempFile = null;
+            if (!store.contains(hash)) {
+                tempFile = installer.getDownloader().download(
+                        Collections.singletonList(url), fileVersion, size, to, hash);
+            }
+            InstallTask task = new ObjectStoreInstall(log, store, hash, tempFile, targetFile, isLinkable());
+            if (tempFile != null) {
+                installer.queue(task, tempFile);
+            } else {
+                installer.queue(task);
+            }
         } else {
-            log.add(to, to);
+            File tempFile = installer.getDownloader().download(
+                    Collections.singletonList(url), fileVersion, size, to, hash);
+            installer.queue(new InstallLogFileMover(log, tempFile, targetFile), tempFile);
+        }
+    }
+
+    /**
+     * Whether the file can be hard linked to the shared object store. Only
+     * archives are linked because the game rewrites other files (such as
+     * configuration) in place, which would modify the stored object.
+     *
+     * @return true if the file can be linked
+     */
+    @JsonIgnore
+    protected boolean isLinkable() {
+        if (isUserFile()) {
+            return false;
         }
+
+        String extension = FilenameUtils.getExtension(getTargetPath()).toLowerCase();
+        return extension.equals("jar") || extension.equals("zip");
     }
 
-    private boolean shouldUpdate(UpdateCache cache, File targetFile) throws IOException {
+    protected boolean shouldUpdate(UpdateCache cache, File targetFile) throws IOException {
         if (targetFile.exists() && isUserFile()) {
             return false;
         }
@@ -83,13 +148,37 @@ public class FileInstall extends ManifestEntry {
         }
 
         if (hash != null) {
-            String existingHash = Files.hash(targetFile, hf).toString();
+            String existingHash = getExistingHash(cache, targetFile);
             if (existingHash.equalsIgnoreCase(hash)) {
                 return false;
             }
         }
 
-        return cache.mark(FilenameUtils.normalize(getTargetPath()), getImpliedVersion());
+        return cache.mark(getCacheKey(), getImpliedVersion());
+    }
+
+    /**
+     * Get the hash of an existing file, only reading the file if its size
+     * or modification time has changed since it was last hashed.
+     *
+     * @param cache the update cache
+     * @param targetFile the file
+     * @return the hash
+     * @throws IOException on I/O error
+     */
+    protected String getExistingHash(UpdateCache cache, File targetFile) throws IOException {
+        String key = getCacheKey();
+        String existingHash = cache.getVerifiedHash(key, targetFile);
+        if (existingHash == null) {
+            existingHash = FileHashing.sha1(targetFile);
+            cache.setVerifiedHash(key, targetFile, existingHash);
+        }
+        return existingHash;
+    }
+
+    @JsonIgnore
+    protected String getCacheKey() {
+        return FilenameUtils.normalize(getTargetPath());
     }
 
 }
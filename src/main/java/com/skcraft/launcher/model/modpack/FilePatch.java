@@ -0,0 +1,96 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.model.modpack;
+
+import com.skcraft.launcher.install.HttpDownloader;
+import com.skcraft.launcher.install.InstallLog;
+import com.skcraft.launcher.install.Installer;
+import com.skcraft.launcher.install.ObjectStore;
+import com.skcraft.launcher.install.PatchApplier;
+import com.skcraft.launcher.install.UpdateCache;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+
+import static com.skcraft.launcher.LauncherUtils.concat;
+
+/**
+ * A file that can also be installed by patching the previous version of the
+ * file with a binary delta, rather than downloading the file in full.
+ * <p/>
+ * The patch is only used if the file already on disk is exactly the version
+ * that the patch was made from. If the patched file does not match the
+ * expected hash, or the patch itself can't be downloaded, the full file is
+ * downloaded instead.
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class FilePatch extends FileInstall {
+
+    public static final int MIN_PROTOCOL_VERSION = 3;
+
+    private String patchFrom;
+    private String patchLocation;
+    private long patchSize;
+
+    /**
+     * Copy the properties of an existing file entry.
+     *
+     * @param entry the entry
+     */
+    public void copyFrom(FileInstall entry) {
+        setManifest(entry.getManifest());
+        setWhen(entry.getWhen());
+        setVersion(entry.getVersion());
+        setHash(entry.getHash());
+        setLocation(entry.getLocation());
+        setTo(entry.getTo());
+        setSize(entry.getSize());
+        setUserFile(entry.isUserFile());
+    }
+
+    @Override
+    protected void update(Installer installer, InstallLog log, UpdateCache cache, File targetFile)
+            throws IOException {
+        ObjectStore store = installer.getObjectStore();
+        boolean stored = store != null && getHash() != null && store.contains(getHash());
+
+        if (!stored && getHash() != null && patchFrom != null && patchLocation != null && targetFile.exists()
+                && getExistingHash(cache, targetFile).equalsIgnoreCase(patchFrom)) {
+            cache.setInstalling(getCacheKey(), getHash());
+
+            URL patchUrl = concat(getManifest().getObjectsUrl(), patchLocation);
+            URL url = concat(getManifest().getObjectsUrl(), getLocation());
+
+            long size = patchSize;
+            if (size <= 0) {
+                size = 10 * 1024;
+            }
+
+            long fullSize = getSize();
+            if (fullSize <= 0) {
+                fullSize = 10 * 1024;
+            }
+
+            HttpDownloader downloader = installer.getDownloader();
+            File patchFile = downloader.download(
+                    Collections.singletonList(patchUrl), patchFrom + getImpliedVersion(), size, getTo());
+            downloader.allowFailure(patchFile);
+            HttpDownloader.HttpDownloadJob fallback = downloader.createJob(
+                    Collections.singletonList(url), getImpliedVersion(), fullSize, getTo(), getHash());
+            installer.queue(new PatchApplier(log, store, patchFile, fallback, getHash(), targetFile, isLinkable()),
+                    patchFile);
+        } else {
+            super.update(installer, log, cache, targetFile);
+        }
+    }
+
+}
@@ -16,6 +16,7 @@ import lombok.Data;
 import lombok.ToString;
 
 import java.io.File;
+import java.io.IOException;
 
 @JsonTypeInfo(
         use = JsonTypeInfo.Id.NAME,
@@ -23,7 +24,9 @@ import java.io.File;
         property = "type",
         defaultImpl = FileInstall.class)
 @JsonSubTypes({
-        @JsonSubTypes.Type(value = FileInstall.class, name = "file")
+        @JsonSubTypes.Type(value = FileInstall.class, name = "file"),
+        @JsonSubTypes.Type(value = FilePatch.class, name = "patch"),
+        @JsonSubTypes.Type(value = FileBundle.class, name = "bundle")
 })
 @Data
 @ToString(exclude = "manifest")
@@ -33,6 +36,20 @@ public abstract class ManifestEntry {
     private Manifest manifest;
     private Condition when;
 
+    /**
+     * Do the work needed to install this entry that doesn't depend on any
+     * other entry, such as hashing the existing file, so that it can be done
+     * for many entries in parallel before they are installed in order.
+     *
+     * <p>This method may be called from any thread.</p>
+     *
+     * @param cache the update cache
+     * @param contentDir the content directory
+     * @throws IOException on I/O error
+     */
+    public void prepare(UpdateCache cache, File contentDir) throws IOException {
+    }
+
     public abstract void install(Installer installer, InstallLog log, UpdateCache cache, File contentDir) throws Exception;
 
 }
@@ -40,8 +40,7 @@ public class UpdateChecker implements Callable<URL> {
             LatestVersionInfo versionInfo = HttpRequest.get(url)
                     .execute()
                     .expectResponseCode(200)
-                    .returnContent()
-                    .asJson(LatestVersionInfo.class);
+                    .returnJson(LatestVersionInfo.class);
 
             ComparableVersion current = new ComparableVersion(launcher.getVersion());
             ComparableVersion latest = new ComparableVersion(versionInfo.getVersion());
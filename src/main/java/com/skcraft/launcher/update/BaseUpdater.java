@@ -23,6 +23,7 @@ import com.skcraft.launcher.model.modpack.Manifest;
 import com.skcraft.launcher.model.modpack.ManifestEntry;
 import com.skcraft.launcher.persistence.Persistence;
 import com.skcraft.launcher.util.Environment;
+import com.skcraft.launcher.util.FileHashing;
 import com.skcraft.launcher.util.HttpRequest;
 import lombok.NonNull;
 import lombok.extern.java.Log;
@@ -33,6 +34,9 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import static com.skcraft.launcher.LauncherUtils.checkInterrupted;
@@ -54,6 +58,7 @@ public abstract class BaseUpdater {
 
     private static final long JAR_SIZE_ESTIMATE = 5 * 1024 * 1024;
     private static final long LIBRARY_SIZE_ESTIMATE = 3 * 1024 * 1024;
+    private static final int PREPARE_THREAD_COUNT = 8;
 
     private final Launcher launcher;
     private final Environment environment = Environment.getInstance();
@@ -69,6 +74,43 @@ public abstract class BaseUpdater {
         }
     }
 
+    /**
+     * Prepare the given manifest entries in parallel (which mostly means
+     * hashing the files that are already installed) so that installing them
+     * afterwards, in order, is fast.
+     *
+     * @param entries the entries
+     * @param cache the update cache, which records the hashes
+     * @param contentDir the content directory
+     * @throws InterruptedException thrown on interruption
+     */
+    private void prepareTasks(List<ManifestEntry> entries, final UpdateCache cache,
+                              final File contentDir) throws InterruptedException {
+        int threadCount = Math.max(1, Math.min(PREPARE_THREAD_COUNT, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+        try {
+            for (final ManifestEntry entry : entries) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            entry.prepare(cache, contentDir);
+                        } catch (IOException e) {
+                            // The entry will run into the error again when it is installed
+                            log.log(Level.FINE, "Failed to prepare " + entry, e);
+                        }
+                    }
+                });
+            }
+
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     protected Manifest installPackage(@NonNull Installer installer, @NonNull Instance instance) throws Exception {
         final File contentDir = instance.getContentDir();
         final File logPath = new File(instance.getDir(), "install_log.json");
@@ -83,11 +125,10 @@ public abstract class BaseUpdater {
 
         Manifest manifest = HttpRequest
                 .get(instance.getManifestURL())
+                .ifModified(instance.getManifestPath())
                 .execute()
-                .expectResponseCode(200)
-                .returnContent()
-                .saveContent(instance.getManifestPath())
-                .asJson(Manifest.class);
+                .expectResponseCode(200, 304)
+                .returnJson(Manifest.class, instance.getManifestPath());
 
         if (manifest.getMinimumVersion() > Launcher.PROTOCOL_VERSION) {
             throw new LauncherException("Update required", _("errors.updateRequiredError"));
@@ -120,6 +161,8 @@ public abstract class BaseUpdater {
             }
         }
 
+        prepareTasks(manifest.getTasks(), updateCache, contentDir);
+
         for (ManifestEntry entry : manifest.getTasks()) {
             entry.install(installer, currentLog, updateCache, contentDir);
         }
@@ -135,6 +178,7 @@ public abstract class BaseUpdater {
                     }
                 }
 
+                updateCache.recordInstalled(contentDir);
                 writeDataFile(logPath, currentLog);
                 writeDataFile(cachePath, updateCache);
                 writeDataFile(featuresPath, featuresCache);
@@ -151,8 +195,9 @@ public abstract class BaseUpdater {
         if (!jarFile.exists()) {
             List<File> targets = new ArrayList<File>();
 
-            File tempFile = installer.getDownloader().download(url, "", JAR_SIZE_ESTIMATE, jarFile.getName());
-            installer.queue(new FileMover(tempFile, jarFile));
+            File tempFile = installer.getDownloader().download(Collections.singletonList(url), "",
+                    JAR_SIZE_ESTIMATE, jarFile.getName(), null, Downloader.Priority.CRITICAL);
+            installer.queue(new FileMover(tempFile, jarFile), tempFile);
             log.info("Installing " + jarFile.getName() + " from " + url);
         }
     }
@@ -165,11 +210,10 @@ public abstract class BaseUpdater {
 
         AssetsIndex index = HttpRequest
                 .get(indexUrl)
+                .ifModified(assetsRoot.getIndexPath(versionManifest))
                 .execute()
-                .expectResponseCode(200)
-                .returnContent()
-                .saveContent(assetsRoot.getIndexPath(versionManifest))
-                .asJson(AssetsIndex.class);
+                .expectResponseCode(200, 304)
+                .returnJson(AssetsIndex.class, assetsRoot.getIndexPath(versionManifest));
 
         // Keep track of duplicates
         Set<String> downloading = new HashSet<String>();
@@ -181,6 +225,11 @@ public abstract class BaseUpdater {
             String path = String.format("%s/%s", hash.subSequence(0, 2), hash);
             File targetFile = assetsRoot.getObjectPath(entry.getValue());
 
+            if (targetFile.exists() && !downloading.contains(path) && !isValidAsset(targetFile, entry.getValue())) {
+                log.warning("Replacing damaged asset " + targetFile);
+                targetFile.delete();
+            }
+
             if (!targetFile.exists() && !downloading.contains(path)) {
                 List<URL> urls = new ArrayList<URL>();
                 for (URL sourceUrl : sources) {
@@ -192,14 +241,36 @@ public abstract class BaseUpdater {
                 }
 
                 File tempFile = installer.getDownloader().download(
-                        urls, "", entry.getValue().getSize(), entry.getKey());
-                installer.queue(new FileMover(tempFile, targetFile));
+                        urls, "", entry.getValue().getSize(), entry.getKey(), hash, Downloader.Priority.NORMAL);
+                installer.queue(new FileMover(tempFile, targetFile), tempFile);
                 log.info("Fetching " + path + " from " + urls);
                 downloading.add(path);
             }
         }
     }
 
+    /**
+     * Check that an asset that is already on disk is intact, since assets
+     * are shared between instances and are otherwise never checked again
+     * once they have been downloaded.
+     *
+     * @param file the file
+     * @param asset the asset
+     * @return true if the file has the asset's size and hash
+     */
+    private static boolean isValidAsset(File file, Asset asset) {
+        if (file.length() != asset.getSize()) {
+            return false;
+        }
+
+        try {
+            return FileHashing.sha1(file).equalsIgnoreCase(asset.getHash());
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Failed to verify " + file, e);
+            return false;
+        }
+    }
+
     protected void installLibraries(@NonNull Installer installer,
                                     @NonNull VersionManifest versionManifest,
                                     @NonNull File librariesDir,
@@ -223,8 +294,8 @@ public abstract class BaseUpdater {
                     }
 
                     File tempFile = installer.getDownloader().download(urls, "", LIBRARY_SIZE_ESTIMATE,
-                            library.getName() + ".jar");
-                    installer.queue(new FileMover( tempFile, targetFile));
+                            library.getName() + ".jar", null, Downloader.Priority.CRITICAL);
+                    installer.queue(new FileMover(tempFile, targetFile), tempFile);
                     log.info("Fetching " + path + " from " + urls);
                 }
             }
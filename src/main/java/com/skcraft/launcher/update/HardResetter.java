@@ -44,6 +44,8 @@ public class HardResetter implements Callable<Instance>, ProgressObservable {
         instance.setUpdatePending(true);
         Persistence.commitAndForget(instance);
 
+        // Also forgets the verified state of every file, so that the next
+        // update hashes every file again
         new File(instance.getDir(), "update_cache.json").delete();
 
         removeDir(new File(instance.getContentDir(), "config"));
@@ -14,20 +14,29 @@ import com.skcraft.launcher.Instance;
 import com.skcraft.launcher.Launcher;
 import com.skcraft.launcher.LauncherException;
 import com.skcraft.launcher.install.Installer;
+import com.skcraft.launcher.install.ObjectStore;
 import com.skcraft.launcher.model.minecraft.VersionManifest;
+import com.skcraft.launcher.model.modpack.FileBundle;
+import com.skcraft.launcher.model.modpack.FileInstall;
 import com.skcraft.launcher.model.modpack.Manifest;
+import com.skcraft.launcher.model.modpack.ManifestEntry;
 import com.skcraft.launcher.persistence.Persistence;
 import com.skcraft.launcher.util.HttpRequest;
+import com.skcraft.launcher.util.HttpValidators;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 import lombok.extern.java.Log;
+import org.apache.commons.io.filefilter.DirectoryFileFilter;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
@@ -55,6 +64,9 @@ public class Updater extends BaseUpdater implements Callable<Instance>, Progress
         super(launcher);
 
         this.installer = new Installer(launcher.getInstallerDir());
+        this.installer.setObjectStore(launcher.getObjectStore());
+        this.installer.getDownloader().setBandwidthLimit(launcher.getConfig().getDownloadRateLimit() * 1024L);
+        this.installer.getDownloader().setSourceTracker(launcher.getSourceTracker());
         this.launcher = launcher;
         this.instance = instance;
 
@@ -103,6 +115,7 @@ public class Updater extends BaseUpdater implements Callable<Instance>, Progress
         VersionManifest version = manifest.getVersionManifest();
         if (version != null) {
             mapper.writeValue(instance.getVersionPath(), version);
+            HttpValidators.delete(instance.getVersionPath());
             return version;
         } else {
             URL url = url(String.format(
@@ -111,11 +124,10 @@ public class Updater extends BaseUpdater implements Callable<Instance>, Progress
 
             return HttpRequest
                     .get(url)
+                    .ifModified(instance.getVersionPath())
                     .execute()
-                    .expectResponseCode(200)
-                    .returnContent()
-                    .saveContent(instance.getVersionPath())
-                    .asJson(VersionManifest.class);
+                    .expectResponseCode(200, 304)
+                    .returnJson(VersionManifest.class, instance.getVersionPath());
         }
     }
 
@@ -170,8 +182,8 @@ public class Updater extends BaseUpdater implements Callable<Instance>, Progress
         progress = new DefaultProgress(-1, _("instanceUpdater.collectingAssets"));
         installAssets(installer, version, launcher.propUrl("assetsIndexUrl", version.getAssetsIndex()), assetsSources);
 
-        log.info("Executing download phase...");
-        progress = ProgressFilter.between(installer.getDownloader(), 0, 0.98);
+        log.info("Executing download phase (installing files as they arrive)...");
+        progress = ProgressFilter.between(installer, 0, 0.98);
         installer.download();
 
         log.info("Executing install phase...");
@@ -191,6 +203,53 @@ public class Updater extends BaseUpdater implements Callable<Instance>, Progress
 
         log.log(Level.INFO, instance.getName() +
                 " has been updated to version " + manifest.getVersion() + ".");
+
+        collectGarbage();
+    }
+
+    /**
+     * Delete the objects in the object store that aren't used by the
+     * current manifest of any instance.
+     */
+    private void collectGarbage() {
+        ObjectStore store = launcher.getObjectStore();
+        Set<String> used = new HashSet<String>();
+
+        File[] dirs = launcher.getInstancesDir().listFiles((FileFilter) DirectoryFileFilter.INSTANCE);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                File path = new File(dir, "manifest.json");
+                if (!path.exists()) {
+                    continue;
+                }
+
+                try {
+                    Manifest manifest = mapper.readValue(path, Manifest.class);
+                    for (ManifestEntry entry : manifest.getTasks()) {
+                        addHashes(entry, used);
+                    }
+                } catch (IOException e) {
+                    // Without knowing what the instance uses, nothing can be deleted
+                    log.log(Level.WARNING, "Failed to read " + path + ", so the object store won't be cleaned", e);
+                    return;
+                }
+            }
+        }
+
+        store.collectGarbage(used);
+    }
+
+    private static void addHashes(ManifestEntry entry, Set<String> hashes) {
+        if (entry instanceof FileInstall) {
+            String hash = ((FileInstall) entry).getHash();
+            if (hash != null) {
+                hashes.add(hash);
+            }
+        } else if (entry instanceof FileBundle) {
+            for (FileInstall file : ((FileBundle) entry).getFiles()) {
+                addHashes(file, hashes);
+            }
+        }
     }
 
     @Override
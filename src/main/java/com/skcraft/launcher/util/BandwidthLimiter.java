@@ -0,0 +1,82 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.util;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that caps the combined transfer rate of every request
+ * that shares it.
+ * </p>
+ * The limiter also keeps track of how much time it costs: the time spent
+ * in the limiter when bytes could be taken right away (the overhead in the
+ * copy loop), and the time spent waiting for the bucket to refill.
+ */
+public class BandwidthLimiter {
+
+    private static final long WAIT_INTERVAL = 100;
+
+    private final RateLimiter rateLimiter;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong immediateCalls = new AtomicLong();
+    private final AtomicLong overheadNanos = new AtomicLong();
+    private final AtomicLong throttledNanos = new AtomicLong();
+
+    /**
+     * Create a new limiter.
+     *
+     * @param bytesPerSecond the maximum rate in bytes per second
+     */
+    public BandwidthLimiter(long bytesPerSecond) {
+        this.rateLimiter = RateLimiter.create(Math.max(1, bytesPerSecond));
+    }
+
+    /**
+     * Take the given number of bytes from the bucket, waiting for it to refill
+     * if necessary. The wait is done in short steps so that the thread can
+     * still be interrupted while it is throttled.
+     *
+     * @param bytes the number of bytes
+     * @throws InterruptedException on interruption
+     */
+    public void acquire(int bytes) throws InterruptedException {
+        if (bytes <= 0) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        if (rateLimiter.tryAcquire(bytes)) {
+            overheadNanos.addAndGet(System.nanoTime() - start);
+            immediateCalls.incrementAndGet();
+        } else {
+            try {
+                // tryAcquire() gives up at once if the wait would be longer
+                // than the timeout, so sleep until it's short enough
+                while (!rateLimiter.tryAcquire(bytes, WAIT_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    Thread.sleep(WAIT_INTERVAL);
+                }
+            } finally {
+                throttledNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+        calls.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        long immediateCalls = this.immediateCalls.get();
+        return String.format("%.0f KB/s limit, %d calls, %d ms waiting, %.2f us overhead per unthrottled call",
+                rateLimiter.getRate() / 1024,
+                calls.get(),
+                throttledNanos.get() / 1000000,
+                immediateCalls > 0 ? overheadNanos.get() / 1000.0 / immediateCalls : 0);
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.util;
+
+import com.google.common.io.Files;
+import lombok.NonNull;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Creates and applies binary deltas, which describe a new version of a file
+ * as a series of ranges copied from the old version and runs of new bytes.
+ * <p/>
+ * Matches are found rsync-style: every block of the old file is indexed by
+ * its rolling checksum, and the new file is scanned a byte at a time for
+ * blocks that also appear in the old file. Each match is then extended in
+ * both directions, so content that has only shifted costs a single copy.
+ * The delta itself is deflated.
+ */
+public final class BinaryDelta {
+
+    private static final int MAGIC = 0x534b4431;
+    private static final int BLOCK_SIZE = 64;
+    private static final int MAX_CANDIDATES = 16;
+    private static final int BUFFER_SIZE = 1024 * 8;
+
+    private static final int OP_END = 0;
+    private static final int OP_COPY = 1;
+    private static final int OP_ADD = 2;
+
+    private BinaryDelta() {
+    }
+
+    /**
+     * Create a delta that turns the source file into the target file. Both
+     * files are read into memory, so callers should limit their size.
+     *
+     * @param source the old version of the file
+     * @param target the new version of the file
+     * @param delta the file to write the delta to
+     * @throws IOException on I/O error
+     */
+    public static void create(@NonNull File source, @NonNull File target, @NonNull File delta) throws IOException {
+        byte[] sourceData = Files.toByteArray(source);
+        byte[] targetData = Files.toByteArray(target);
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(delta));
+        try {
+            create(sourceData, targetData, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Create a delta that turns the source data into the target data.
+     *
+     * @param source the old data
+     * @param target the new data
+     * @param out the stream to write the delta to, which is not closed
+     * @throws IOException on I/O error
+     */
+    public static void create(@NonNull byte[] source, @NonNull byte[] target, @NonNull OutputStream out)
+            throws IOException {
+        DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION));
+        DataOutputStream dos = new DataOutputStream(deflater);
+
+        dos.writeInt(MAGIC);
+        dos.writeLong(target.length);
+
+        int blockCount = source.length / BLOCK_SIZE;
+        int tableSize = Math.max(16, Integer.highestOneBit(Math.max(1, blockCount)) * 2);
+        int mask = tableSize - 1;
+        int[] heads = new int[tableSize];
+        int[] next = new int[blockCount];
+        Arrays.fill(heads, -1);
+
+        for (int i = 0; i < blockCount; i++) {
+            int slot = spread(checksum(source, i * BLOCK_SIZE)) & mask;
+            next[i] = heads[slot];
+            heads[slot] = i;
+        }
+
+        int literalStart = 0;
+        int pos = 0;
+        int a = 0;
+        int b = 0;
+        boolean rolling = false;
+
+        while (blockCount > 0 && pos + BLOCK_SIZE <= target.length) {
+            if (!rolling) {
+                a = 0;
+                b = 0;
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    int x = target[pos + i] & 0xff;
+                    a += x;
+                    b += (BLOCK_SIZE - i) * x;
+                }
+                rolling = true;
+            }
+
+            int bestOffset = -1;
+            int bestLength = 0;
+            int candidates = 0;
+            for (int block = heads[spread(pack(a, b)) & mask]; block != -1 && candidates < MAX_CANDIDATES;
+                 block = next[block]) {
+                candidates++;
+                int offset = block * BLOCK_SIZE;
+                int length = matchLength(source, offset, target, pos);
+                if (length >= BLOCK_SIZE && length > bestLength) {
+                    bestOffset = offset;
+                    bestLength = length;
+                }
+            }
+
+            if (bestOffset >= 0) {
+                int start = pos;
+                // Pull in preceding bytes that also match
+                while (start > literalStart && bestOffset > 0 && source[bestOffset - 1] == target[start - 1]) {
+                    start--;
+                    bestOffset--;
+                    bestLength++;
+                }
+
+                writeAdd(dos, target, literalStart, start - literalStart);
+                dos.writeByte(OP_COPY);
+                dos.writeLong(bestOffset);
+                dos.writeInt(bestLength);
+
+                pos = start + bestLength;
+                literalStart = pos;
+                rolling = false;
+            } else if (pos + BLOCK_SIZE < target.length) {
+                int removed = target[pos] & 0xff;
+                int added = target[pos + BLOCK_SIZE] & 0xff;
+                a += added - removed;
+                b += a - BLOCK_SIZE * removed;
+                pos++;
+            } else {
+                break;
+            }
+        }
+
+        writeAdd(dos, target, literalStart, target.length - literalStart);
+        dos.writeByte(OP_END);
+        dos.flush();
+        deflater.finish();
+    }
+
+    /**
+     * Apply a delta to the source file.
+     *
+     * @param source the old version of the file
+     * @param delta the stream to read the delta from, which is not closed
+     * @param out the stream to write the new version of the file to, which is not closed
+     * @throws IOException on I/O error, or if the delta is not valid
+     */
+    public static void apply(@NonNull File source, @NonNull InputStream delta, @NonNull OutputStream out)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new InflaterInputStream(delta));
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a delta file");
+        }
+
+        long expectedLength = in.readLong();
+        long written = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        RandomAccessFile raf = new RandomAccessFile(source, "r");
+
+        try {
+            while (true) {
+                int op = in.readUnsignedByte();
+                if (op == OP_END) {
+                    break;
+                } else if (op == OP_COPY) {
+                    long offset = in.readLong();
+                    int length = in.readInt();
+                    if (offset < 0 || length < 0 || offset + length > raf.length()) {
+                        throw new IOException("Delta copies from outside of " + source);
+                    }
+                    raf.seek(offset);
+                    while (length > 0) {
+                        int len = Math.min(length, buffer.length);
+                        raf.readFully(buffer, 0, len);
+                        out.write(buffer, 0, len);
+                        length -= len;
+                        written += len;
+                    }
+                } else if (op == OP_ADD) {
+                    int length = in.readInt();
+                    if (length < 0) {
+                        throw new IOException("Delta is corrupt");
+                    }
+                    while (length > 0) {
+                        int len = Math.min(length, buffer.length);
+                        in.readFully(buffer, 0, len);
+                        out.write(buffer, 0, len);
+                        length -= len;
+                        written += len;
+                    }
+                } else {
+                    throw new IOException("Delta is corrupt");
+                }
+            }
+        } finally {
+            raf.close();
+        }
+
+        if (written != expectedLength) {
+            throw new IOException("Delta produced " + written + " bytes but " + expectedLength + " were expected");
+        }
+    }
+
+    private static void writeAdd(DataOutputStream dos, byte[] data, int offset, int length) throws IOException {
+        if (length > 0) {
+            dos.writeByte(OP_ADD);
+            dos.writeInt(length);
+            dos.write(data, offset, length);
+        }
+    }
+
+    private static int matchLength(byte[] source, int sourceOffset, byte[] target, int targetOffset) {
+        int max = Math.min(source.length - sourceOffset, target.length - targetOffset);
+        int i = 0;
+        while (i < max && source[sourceOffset + i] == target[targetOffset + i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int checksum(byte[] data, int offset) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            int x = data[offset + i] & 0xff;
+            a += x;
+            b += (BLOCK_SIZE - i) * x;
+        }
+        return pack(a, b);
+    }
+
+    private static int pack(int a, int b) {
+        return (b << 16) | (a & 0xffff);
+    }
+
+    private static int spread(int h) {
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h;
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.util;
+
+import com.google.common.hash.HashCode;
+import lombok.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+/**
+ * Computes the SHA-1 hashes of files, which is what the launcher and the
+ * builder use to identify files.
+ * <p/>
+ * Small files are read in one go. Larger files are read through their
+ * channel into a large array, which is kept for each thread, and the
+ * digest is updated straight from the array. (A direct buffer would save
+ * nothing, because {@link MessageDigest#update(ByteBuffer)} copies a direct
+ * buffer into a small array of its own.) Files are not memory mapped,
+ * because a mapped file stays locked on Windows until the mapping is
+ * garbage collected, which would stop the installer from replacing it.
+ * <p/>
+ * See <code>FileHashingBenchmark</code> for a comparison of the ways of
+ * hashing a file.
+ */
+public final class FileHashing {
+
+    private static final int SMALL_FILE_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private FileHashing() {
+    }
+
+    /**
+     * Create a new SHA-1 digest.
+     *
+     * @return the digest
+     */
+    public static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Get the SHA-1 hash of a file.
+     *
+     * @param file the file
+     * @return the hash, as a lowercase hex string
+     * @throws IOException on I/O error
+     */
+    public static String sha1(@NonNull File file) throws IOException {
+        MessageDigest digest = createDigest();
+        update(digest, file);
+        return HashCode.fromBytes(digest.digest()).toString();
+    }
+
+    /**
+     * Copy a file and get the SHA-1 hash of its contents, reading the file
+     * only once.
+     *
+     * @param from the file to copy
+     * @param to the file to write to, which is replaced if it exists
+     * @return the hash, as a lowercase hex string
+     * @throws IOException on I/O error
+     */
+    public static String copy(@NonNull File from, @NonNull File to) throws IOException {
+        MessageDigest digest = createDigest();
+        FileInputStream fis = new FileInputStream(from);
+        FileOutputStream fos = null;
+        boolean successful = false;
+
+        try {
+            fos = new FileOutputStream(to);
+            FileChannel in = fis.getChannel();
+            FileChannel out = fos.getChannel();
+            byte[] data = buffers.get();
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                digest.update(data, 0, len);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+
+            // An error on close can mean that the data never made it to disk
+            fos.close();
+            successful = true;
+        } finally {
+            closeQuietly(fis);
+            if (!successful) {
+                closeQuietly(fos);
+            }
+        }
+
+        return HashCode.fromBytes(digest.digest()).toString();
+    }
+
+    /**
+     * Update a digest with the contents of a file.
+     *
+     * @param digest the digest
+     * @param file the file
+     * @throws IOException on I/O error
+     */
+    public static void update(@NonNull MessageDigest digest, @NonNull File file) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+
+        try {
+            long length = file.length();
+            if (length <= SMALL_FILE_SIZE) {
+                byte[] data = new byte[(int) Math.max(1, length)];
+                int len;
+                while ((len = fis.read(data)) != -1) {
+                    digest.update(data, 0, len);
+                }
+            } else {
+                FileChannel channel = fis.getChannel();
+                byte[] data = buffers.get();
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                int len;
+                while ((len = channel.read(buffer)) != -1) {
+                    digest.update(data, 0, len);
+                    buffer.clear();
+                }
+            }
+        } finally {
+            closeQuietly(fis);
+        }
+    }
+
+}
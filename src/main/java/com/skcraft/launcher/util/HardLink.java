@@ -0,0 +1,83 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.util;
+
+import lombok.NonNull;
+import lombok.extern.java.Log;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+
+/**
+ * Creates hard links on Java 7 and above.
+ * </p>
+ * The launcher is still compiled against Java 6, so the NIO.2 file API
+ * is looked up reflectively. On older runtimes, {@link #create(File, File)}
+ * always returns false and callers are expected to copy instead.
+ */
+@Log
+public final class HardLink {
+
+    private static Method toPath;
+    private static Method createLink;
+
+    static {
+        try {
+            Class<?> pathClass = Class.forName("java.nio.file.Path");
+            Class<?> filesClass = Class.forName("java.nio.file.Files");
+            toPath = File.class.getMethod("toPath");
+            createLink = filesClass.getMethod("createLink", pathClass, pathClass);
+        } catch (ClassNotFoundException e) {
+            toPath = null;
+            createLink = null;
+        } catch (NoSuchMethodException e) {
+            toPath = null;
+            createLink = null;
+        }
+    }
+
+    private HardLink() {
+    }
+
+    /**
+     * Return whether the current runtime is able to create hard links.
+     *
+     * @return true if supported
+     */
+    public static boolean isSupported() {
+        return createLink != null;
+    }
+
+    /**
+     * Create a hard link at the given path pointing to an existing file.
+     * The link path must not exist.
+     *
+     * @param link the path of the new link
+     * @param existing the existing file
+     * @return true if the link was created
+     */
+    public static boolean create(@NonNull File link, @NonNull File existing) {
+        if (!isSupported()) {
+            return false;
+        }
+
+        try {
+            createLink.invoke(null, toPath.invoke(link), toPath.invoke(existing));
+            return true;
+        } catch (IllegalAccessException e) {
+            log.log(Level.WARNING, "Failed to access the hard link API", e);
+            return false;
+        } catch (InvocationTargetException e) {
+            // Unsupported by the file system, across devices, etc.
+            log.log(Level.FINE, "Could not link " + link + " to " + existing, e.getCause());
+            return false;
+        }
+    }
+
+}
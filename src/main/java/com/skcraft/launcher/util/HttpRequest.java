@@ -7,6 +7,7 @@
 package com.skcraft.launcher.util;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.CountingInputStream;
 import com.skcraft.concurrency.ProgressObservable;
 import lombok.Getter;
 import lombok.extern.java.Log;
@@ -16,7 +17,15 @@ import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import static com.skcraft.launcher.LauncherUtils.checkInterrupted;
 import static org.apache.commons.io.IOUtils.closeQuietly;
@@ -30,6 +39,8 @@ public class HttpRequest implements Closeable, ProgressObservable {
 
     private static final int READ_TIMEOUT = 1000 * 60 * 10;
     private static final int READ_BUFFER_SIZE = 1024 * 8;
+    private static final int CHANNEL_BUFFER_SIZE = 1024 * 64;
+    private static final int INTERRUPT_CHECK_INTERVAL = 1024 * 1024;
 
     private final ObjectMapper mapper = new ObjectMapper();
     private final Map<String, String> headers = new HashMap<String, String>();
@@ -40,9 +51,14 @@ public class HttpRequest implements Closeable, ProgressObservable {
     private byte[] body;
     private HttpURLConnection conn;
     private InputStream inputStream;
+    private CountingInputStream encodedStream;
+    private String contentEncoding;
+    private MessageDigest digest;
+    private BandwidthLimiter bandwidthLimiter;
 
     private long contentLength = -1;
     private long readBytes = 0;
+    private boolean consumed = false;
 
     /**
      * Create a new HTTP request.
@@ -92,6 +108,54 @@ public class HttpRequest implements Closeable, ProgressObservable {
         return this;
     }
 
+    /**
+     * Update the given digest with the response body as it is saved, so
+     * that the response can be verified without reading it back.
+     *
+     * @param digest the digest
+     * @return this object
+     */
+    public HttpRequest digest(MessageDigest digest) {
+        this.digest = digest;
+        return this;
+    }
+
+    /**
+     * Make the request conditional on the response having changed since it
+     * was saved to the given file with {@link #returnJson(Class, File)}.
+     * If the file has no stored validators, or they came from a different
+     * URL (such as for another version of the same file), the request is
+     * left as-is.
+     *
+     * @param file the file
+     * @return this object
+     */
+    public HttpRequest ifModified(File file) {
+        if (file.exists()) {
+            HttpValidators validators = HttpValidators.read(file);
+            if (validators != null && validators.isFrom(url)) {
+                if (validators.getEtag() != null) {
+                    header("If-None-Match", validators.getEtag());
+                }
+                if (validators.getLastModified() != null) {
+                    header("If-Modified-Since", validators.getLastModified());
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Limit the rate at which the response body is read.
+     *
+     * @param limiter the limiter, which may be shared between requests, or null
+     * @return this object
+     */
+    public HttpRequest bandwidthLimiter(BandwidthLimiter limiter) {
+        this.bandwidthLimiter = limiter;
+        return this;
+    }
+
     /**
      * Execute the request.
      * <p/>
@@ -117,6 +181,11 @@ public class HttpRequest implements Closeable, ProgressObservable {
                 conn.setDoInput(true);
             }
 
+            // Compressed responses can't be resumed or split with byte ranges
+            if (!headers.containsKey("Range") && !headers.containsKey("Accept-Encoding")) {
+                conn.setRequestProperty("Accept-Encoding", "gzip, deflate");
+            }
+
             for (Map.Entry<String, String> entry : headers.entrySet()) {
                 conn.setRequestProperty(entry.getKey(), entry.getValue());
             }
@@ -135,9 +204,20 @@ public class HttpRequest implements Closeable, ProgressObservable {
                 out.close();
             }
 
-            inputStream = conn.getResponseCode() == HttpURLConnection.HTTP_OK ?
+            int code = conn.getResponseCode();
+            inputStream = code >= 200 && code < 300 ?
                     conn.getInputStream() : conn.getErrorStream();
 
+            if (inputStream != null && code != HttpURLConnection.HTTP_NO_CONTENT && !method.equals("HEAD")) {
+                if (code >= 200 && code < 300) {
+                    inputStream = decode(inputStream, conn.getContentEncoding());
+                } else {
+                    // Error bodies are often empty or cut short, which must
+                    // not get in the way of reporting the response code
+                    inputStream = new LazyDecodingInputStream(inputStream, conn.getContentEncoding());
+                }
+            }
+
             successful = true;
         } finally {
             if (!successful) {
@@ -182,6 +262,67 @@ public class HttpRequest implements Closeable, ProgressObservable {
         return conn.getResponseCode();
     }
 
+    /**
+     * Get the value of a response header.
+     *
+     * @param name the header name
+     * @return the value, or null if the header was not sent
+     */
+    public String getHeaderField(String name) {
+        if (conn == null) {
+            throw new IllegalArgumentException("No connection has been made");
+        }
+
+        return conn.getHeaderField(name);
+    }
+
+    /**
+     * Return whether the response body was sent with a content encoding
+     * (such as gzip) that is being decoded as it is read.
+     *
+     * @return true if encoded
+     */
+    public boolean isEncoded() {
+        return contentEncoding != null;
+    }
+
+    /**
+     * Wrap the response stream to decode the given content encoding, if
+     * it is one that is supported.
+     *
+     * @param in the raw response stream
+     * @param encoding the content encoding, or null
+     * @return the stream to read the response body from
+     * @throws IOException on I/O error
+     */
+    private InputStream decode(InputStream in, String encoding) throws IOException {
+        if (encoding == null) {
+            return in;
+        }
+
+        encoding = encoding.trim().toLowerCase();
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            contentEncoding = encoding;
+            encodedStream = new CountingInputStream(in);
+            return new GZIPInputStream(encodedStream, READ_BUFFER_SIZE);
+        } else if (encoding.equals("deflate")) {
+            contentEncoding = encoding;
+            encodedStream = new CountingInputStream(in);
+            BufferedInputStream bis = new BufferedInputStream(encodedStream, READ_BUFFER_SIZE);
+            // Some servers send raw deflate data without the zlib header
+            bis.mark(2);
+            int cmf = bis.read();
+            int flg = bis.read();
+            bis.reset();
+            boolean zlib = (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+            return new InflaterInputStream(bis, new Inflater(!zlib), READ_BUFFER_SIZE);
+        } else if (encoding.equals("identity")) {
+            return in;
+        } else {
+            throw new IOException("Unsupported content encoding '" + encoding + "' for " + url);
+        }
+    }
+
     /**
      * Get the input stream.
      *
@@ -203,19 +344,126 @@ public class HttpRequest implements Closeable, ProgressObservable {
             throw new IllegalArgumentException("No input stream available");
         }
 
+        readContentLength();
+
         try {
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            int b = 0;
-            while ((b = inputStream.read()) != -1) {
+            byte[] data = new byte[READ_BUFFER_SIZE];
+            int len = 0;
+            while ((len = inputStream.read(data, 0, READ_BUFFER_SIZE)) >= 0) {
+                bos.write(data, 0, len);
+                readBytes += len;
                 checkInterrupted();
-                bos.write(b);
             }
+            consumed = true;
             return new BufferedResponse(bos.toByteArray());
         } finally {
             close();
         }
     }
 
+    /**
+     * Deserialize the response from a JSON payload as it is received,
+     * without buffering the whole response in memory first.
+     *
+     * @param cls the class
+     * @return the object
+     * @throws java.io.IOException  on I/O error
+     * @throws InterruptedException on interruption
+     */
+    public <T> T returnJson(Class<T> cls) throws IOException, InterruptedException {
+        return returnJson(cls, null);
+    }
+
+    /**
+     * Deserialize the response from a JSON payload as it is received, while
+     * also saving a copy of the response to a file.
+     * <p/>
+     * The copy is written to a temporary file that is only moved into place
+     * once the whole response has been received and parsed, so an existing
+     * copy is never replaced with a partial or invalid one. The response's
+     * validators are stored with the copy, and if the request was made with
+     * {@link #ifModified(File)} and the server replies with 304 Not Modified,
+     * the saved copy is read instead.
+     *
+     * @param cls the class
+     * @param saveTo the file to save a copy of the response to, or null
+     * @return the object
+     * @throws java.io.IOException  on I/O error
+     * @throws InterruptedException on interruption
+     */
+    public <T> T returnJson(Class<T> cls, File saveTo) throws IOException, InterruptedException {
+        if (saveTo != null && getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            consumed = true;
+            close();
+
+            // The saved copy is only the current version if it came from
+            // this URL, which may have changed while the file stayed put
+            HttpValidators validators = saveTo.exists() ? HttpValidators.read(saveTo) : null;
+            if (validators == null || !validators.isFrom(url)) {
+                throw new IOException("Got 304 Not Modified from " + url + " but " + saveTo +
+                        " was not saved from there");
+            }
+
+            log.info(url + " has not been modified; using " + saveTo);
+            try {
+                return mapper.readValue(saveTo, cls);
+            } catch (IOException e) {
+                HttpValidators.delete(saveTo);
+                throw e;
+            }
+        }
+
+        if (inputStream == null) {
+            throw new IllegalArgumentException("No input stream available");
+        }
+
+        readContentLength();
+
+        File tempFile = null;
+        OutputStream out = null;
+        boolean successful = false;
+
+        try {
+            if (saveTo != null) {
+                saveTo.getParentFile().mkdirs();
+                tempFile = new File(saveTo.getParentFile(), saveTo.getName() + ".tmp");
+                out = new BufferedOutputStream(new FileOutputStream(tempFile));
+            }
+
+            ContentInputStream in = new ContentInputStream(inputStream, out);
+            T object = mapper.readValue(in, cls);
+            in.drain(); // Jackson stops at the end of the value
+            consumed = true;
+
+            if (out != null) {
+                out.close();
+                out = null;
+                HttpValidators.delete(saveTo);
+                saveTo.delete();
+                if (!tempFile.renameTo(saveTo)) {
+                    throw new IOException("Failed to move " + tempFile + " to " + saveTo);
+                }
+
+                HttpValidators validators = HttpValidators.from(this);
+                if (!validators.isEmpty()) {
+                    validators.write(saveTo);
+                }
+            }
+
+            successful = true;
+            return object;
+        } catch (InterruptedIOException e) {
+            throw new InterruptedException();
+        } finally {
+            closeQuietly(out);
+            if (!successful && tempFile != null) {
+                tempFile.delete();
+            }
+            close();
+        }
+    }
+
     /**
      * Save the result to a file.
      *
@@ -225,16 +473,32 @@ public class HttpRequest implements Closeable, ProgressObservable {
      * @throws InterruptedException on interruption
      */
     public HttpRequest saveContent(File file) throws IOException, InterruptedException {
+        return saveContent(file, false);
+    }
+
+    /**
+     * Save the result to a file, optionally appending to the existing
+     * contents of the file (such as for the response to a range request).
+     *
+     * @param file the file
+     * @param append true to append to the file
+     * @return this object
+     * @throws java.io.IOException  on I/O error
+     * @throws InterruptedException on interruption
+     */
+    public HttpRequest saveContent(File file, boolean append) throws IOException, InterruptedException {
         FileOutputStream fos = null;
-        BufferedOutputStream bos = null;
+
+        if (append) {
+            readBytes = file.length();
+        }
 
         try {
-            fos = new FileOutputStream(file);
-            bos = new BufferedOutputStream(fos);
+            fos = new FileOutputStream(file, append);
+            FileChannel channel = fos.getChannel();
 
-            saveContent(bos);
+            saveContent(channel, channel.position());
         } finally {
-            closeQuietly(bos);
             closeQuietly(fos);
         }
 
@@ -250,29 +514,24 @@ public class HttpRequest implements Closeable, ProgressObservable {
      * @throws InterruptedException on interruption
      */
     public HttpRequest saveContent(OutputStream out) throws IOException, InterruptedException {
-        BufferedInputStream bis;
+        readContentLength();
 
-        try {
-            String field = conn.getHeaderField("Content-Length");
-            if (field != null) {
-                long len = Long.parseLong(field);
-                if (len >= 0) { // Let's just not deal with really big numbers
-                    contentLength = len;
-                }
-            }
-        } catch (NumberFormatException e) {
+        if (digest != null) {
+            out = new DigestOutputStream(out, digest);
         }
 
         try {
-            bis = new BufferedInputStream(inputStream);
-
             byte[] data = new byte[READ_BUFFER_SIZE];
             int len = 0;
-            while ((len = bis.read(data, 0, READ_BUFFER_SIZE)) >= 0) {
+            while ((len = inputStream.read(data, 0, READ_BUFFER_SIZE)) >= 0) {
+                if (bandwidthLimiter != null) {
+                    bandwidthLimiter.acquire(len);
+                }
                 out.write(data, 0, len);
                 readBytes += len;
                 checkInterrupted();
             }
+            consumed = true;
         } finally {
             close();
         }
@@ -280,10 +539,89 @@ public class HttpRequest implements Closeable, ProgressObservable {
         return this;
     }
 
+    /**
+     * Save the result into a region of a file channel, starting at the given
+     * position, such as for the response to a range request. The channel is
+     * not closed.
+     * <p/>
+     * The body is read into one array, which the digest is updated from
+     * and which is wrapped to write to the channel, so each chunk is only
+     * copied out of the response stream once on this side of the channel.
+     * Interruption is checked every megabyte rather than for every read.
+     *
+     * @param channel the channel
+     * @param position the position in the file to write the first byte to
+     * @return this object
+     * @throws java.io.IOException  on I/O error
+     * @throws InterruptedException on interruption
+     */
+    public HttpRequest saveContent(FileChannel channel, long position) throws IOException, InterruptedException {
+        readContentLength();
+
+        try {
+            byte[] data = new byte[CHANNEL_BUFFER_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            long sinceCheck = 0;
+            int len = 0;
+            while ((len = inputStream.read(data, 0, data.length)) >= 0) {
+                if (bandwidthLimiter != null) {
+                    bandwidthLimiter.acquire(len);
+                }
+                if (digest != null) {
+                    digest.update(data, 0, len);
+                }
+                buffer.clear();
+                buffer.limit(len);
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                readBytes += len;
+                sinceCheck += len;
+                if (sinceCheck >= INTERRUPT_CHECK_INTERVAL) {
+                    sinceCheck = 0;
+                    checkInterrupted();
+                }
+            }
+            checkInterrupted();
+            consumed = true;
+        } catch (ClosedByInterruptException e) {
+            throw new InterruptedException();
+        } finally {
+            close();
+        }
+
+        return this;
+    }
+
+    private void readContentLength() {
+        try {
+            String field = conn.getHeaderField("Content-Length");
+            if (field != null) {
+                long len = Long.parseLong(field);
+                if (len >= 0) { // Let's just not deal with really big numbers
+                    contentLength = readBytes + len;
+                }
+            }
+        } catch (NumberFormatException e) {
+        }
+    }
+
+    /**
+     * Get the number of bytes of the response body read so far, including
+     * any bytes already in the file when appending.
+     *
+     * @return the number of bytes
+     */
+    public long getReadBytes() {
+        return readBytes;
+    }
+
     @Override
     public double getProgress() {
         if (contentLength >= 0) {
-            return readBytes / (double) contentLength;
+            // Content-Length counts the encoded bytes
+            long transferred = encodedStream != null ? encodedStream.getCount() : readBytes;
+            return transferred / (double) contentLength;
         } else {
             return -1;
         }
@@ -294,9 +632,43 @@ public class HttpRequest implements Closeable, ProgressObservable {
         return null;
     }
 
+    /**
+     * Release the connection.
+     * <p/>
+     * If the response body was read in full, the connection is handed back
+     * to the JVM's keep-alive cache so that the next request to the same
+     * host can reuse the socket (and skip the TCP and TLS handshakes).
+     * Otherwise the connection is torn down.
+     *
+     * @throws IOException on I/O error
+     */
     @Override
     public void close() throws IOException {
-        if (conn != null) conn.disconnect();
+        if (conn != null) {
+            if (consumed) {
+                if (inputStream != null) {
+                    closeQuietly(inputStream);
+                }
+            } else {
+                conn.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Set the maximum number of idle connections that are kept alive per
+     * host for reuse by later requests.
+     * <p/>
+     * The JVM reads this setting once, so it has to be set before the
+     * first request is made.
+     *
+     * @param max the maximum number of connections
+     */
+    public static void setMaxConnectionsPerHost(int max) {
+        if (max > 0) {
+            System.setProperty("http.keepAlive", "true");
+            System.setProperty("http.maxConnections", String.valueOf(max));
+        }
     }
 
     /**
@@ -367,6 +739,113 @@ public class HttpRequest implements Closeable, ProgressObservable {
         }
     }
 
+    /**
+     * Reads the response body for {@link #returnJson(Class, File)}, copying
+     * what is read to an optional output stream and keeping track of
+     * progress.
+     * <p/>
+     * Closing the stream does nothing, so that the rest of the body can
+     * still be drained after the parser is done with it.
+     */
+    private class ContentInputStream extends FilterInputStream {
+        private final OutputStream out;
+
+        private ContentInputStream(InputStream in, OutputStream out) {
+            super(in);
+            this.out = out;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] data = new byte[1];
+            int len = read(data, 0, 1);
+            return len == 1 ? data[0] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                if (out != null) {
+                    out.write(b, off, read);
+                }
+                readBytes += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] data = new byte[(int) Math.min(n, READ_BUFFER_SIZE)];
+            int len = read(data, 0, data.length);
+            return Math.max(0, len);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void drain() throws IOException {
+            byte[] data = new byte[READ_BUFFER_SIZE];
+            while (read(data, 0, data.length) >= 0) {
+            }
+        }
+    }
+
+    /**
+     * Decodes the body of an error response on the first read rather than
+     * when the request is executed. An empty body is read as empty even if
+     * it claims to be encoded.
+     */
+    private class LazyDecodingInputStream extends InputStream {
+        private final String encoding;
+        private InputStream in;
+        private boolean decoded;
+
+        private LazyDecodingInputStream(InputStream in, String encoding) {
+            this.in = in;
+            this.encoding = encoding;
+        }
+
+        private InputStream getStream() throws IOException {
+            if (!decoded) {
+                decoded = true;
+                PushbackInputStream pis = new PushbackInputStream(in, 1);
+                in = pis;
+                int b = pis.read();
+                if (b != -1) {
+                    pis.unread(b);
+                    in = decode(pis, encoding);
+                }
+            }
+            return in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return getStream().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return getStream().read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
     /**
      * Used with {@link #bodyForm(Form)}.
      */
@@ -456,7 +935,7 @@ public class HttpRequest implements Closeable, ProgressObservable {
          * @throws java.io.IOException on I/O error
          */
         public <T> T asJson(Class<T> cls) throws IOException {
-            return mapper.readValue(asString("UTF-8"), cls);
+            return mapper.readValue(data, cls);
         }
 
         /**
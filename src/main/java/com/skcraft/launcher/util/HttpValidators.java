@@ -0,0 +1,123 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.util;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.skcraft.launcher.persistence.Persistence;
+import lombok.Data;
+import lombok.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * The cache validators (ETag and Last-Modified) of an HTTP response, which
+ * are stored next to a saved copy of the response body so that later
+ * requests can be made conditional on the copy still being current.
+ * <p/>
+ * The URL that the response came from is stored too, because validators
+ * are only meaningful to the server that issued them: two mirrors may
+ * serve different files with the same Last-Modified date.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class HttpValidators {
+
+    private String url;
+    private String etag;
+    private String lastModified;
+
+    /**
+     * Return whether there are no validators.
+     *
+     * @return true if empty
+     */
+    @JsonIgnore
+    public boolean isEmpty() {
+        return etag == null && lastModified == null;
+    }
+
+    /**
+     * Get the value to use for an If-Range header, which requires a strong
+     * validator, or null if there is none.
+     *
+     * @return the value, or null
+     */
+    @JsonIgnore
+    public String getIfRange() {
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        } else {
+            return lastModified;
+        }
+    }
+
+    /**
+     * Return whether these validators came from a response to the given URL.
+     *
+     * @param url the URL
+     * @return true if the validators are for the URL
+     */
+    public boolean isFrom(@NonNull URL url) {
+        return url.toString().equals(this.url);
+    }
+
+    /**
+     * Write the validators next to the given file.
+     *
+     * @param file the file that the validators are for
+     * @throws IOException on I/O error
+     */
+    public void write(@NonNull File file) throws IOException {
+        Persistence.write(getPath(file), this);
+    }
+
+    /**
+     * Get the validators from a response.
+     *
+     * @param request the executed request
+     * @return the validators, which may be empty
+     */
+    public static HttpValidators from(@NonNull HttpRequest request) {
+        HttpValidators validators = new HttpValidators();
+        validators.setUrl(request.getUrl().toString());
+        validators.setEtag(request.getHeaderField("ETag"));
+        validators.setLastModified(request.getHeaderField("Last-Modified"));
+        return validators;
+    }
+
+    /**
+     * Read the validators stored next to the given file.
+     *
+     * @param file the file that the validators are for
+     * @return the validators, or null if there are none
+     */
+    public static HttpValidators read(@NonNull File file) {
+        File path = getPath(file);
+        if (!path.exists()) {
+            return null;
+        }
+        HttpValidators validators = Persistence.read(path, HttpValidators.class, true);
+        return validators != null && !validators.isEmpty() ? validators : null;
+    }
+
+    /**
+     * Delete the validators stored next to the given file.
+     *
+     * @param file the file that the validators are for
+     */
+    public static void delete(@NonNull File file) {
+        getPath(file).delete();
+    }
+
+    private static File getPath(File file) {
+        return new File(file.getParentFile(), file.getName() + ".validators.json");
+    }
+
+}
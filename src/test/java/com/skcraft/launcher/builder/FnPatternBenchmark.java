@@ -0,0 +1,114 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.builder;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares assigning files to features with {@link FnPatternIndex} against
+ * testing every pattern with {@link FnMatch}, as the builder used to.
+ * <p/>
+ * The patterns are shaped like the ones that <code>.info.json</code> files
+ * and pack authors write: mostly literal paths and <code>literal*</code>
+ * patterns, with some patterns that start with a wildcard.
+ * <p/>
+ * Run with <code>mvn test-compile</code> and then
+ * <code>java -cp target/test-classes:&lt;test classpath&gt; org.openjdk.jmh.Main FnPatternBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FnPatternBenchmark {
+
+    private static final EnumSet<FnMatch.Flag> FLAGS = EnumSet.of(FnMatch.Flag.CASEFOLD, FnMatch.Flag.PERIOD);
+
+    @Param({"100", "500"})
+    private int patternCount;
+
+    @Param({"20000"})
+    private int pathCount;
+
+    private final List<String> patterns = new ArrayList<String>();
+    private final List<String> paths = new ArrayList<String>();
+    private FnPatternIndex<Integer> index;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(0);
+
+        patterns.clear();
+        index = new FnPatternIndex<Integer>();
+        for (int i = 0; i < patternCount; i++) {
+            String pattern;
+            switch (random.nextInt(10)) {
+                case 0:
+                    pattern = "*.feature" + i;
+                    break;
+                case 1:
+                case 2:
+                    pattern = "config/mod" + i + "/*";
+                    break;
+                case 3:
+                    pattern = "mods/mod" + i + "-*.jar";
+                    break;
+                default:
+                    pattern = "mods/mod" + i + "-1.0.jar";
+                    break;
+            }
+            patterns.add(pattern);
+            index.add(new FnPattern(pattern, FLAGS), i);
+        }
+
+        paths.clear();
+        for (int i = 0; i < pathCount; i++) {
+            int mod = random.nextInt(patternCount * 2);
+            switch (random.nextInt(4)) {
+                case 0:
+                    paths.add("config/mod" + mod + "/settings.cfg");
+                    break;
+                case 1:
+                    paths.add("resources/textures/block" + i + ".png");
+                    break;
+                default:
+                    paths.add("mods/mod" + mod + "-1.0.jar");
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public int fnMatch() {
+        int matches = 0;
+        for (String path : paths) {
+            for (String pattern : patterns) {
+                if (FnMatch.fnmatch(pattern, path, FLAGS)) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int index() {
+        int matches = 0;
+        for (String path : paths) {
+            matches += index.getMatches(path).size();
+        }
+        return matches;
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * SK's Minecraft Launcher
+ * Copyright (C) 2010-2014 Albert Pham <http://www.sk89q.com> and contributors
+ * Please see LICENSE.txt for license information.
+ */
+
+package com.skcraft.launcher.util;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+/**
+ * Compares the ways of getting the SHA-1 hash of a file across file sizes,
+ * against {@link FileHashing#sha1(File)}.
+ * <p/>
+ * Run with <code>mvn test-compile</code> and then
+ * <code>java -cp target/test-classes:&lt;test classpath&gt; org.openjdk.jmh.Main FileHashingBenchmark</code>.
+ * The files are small enough to stay in the page cache, so this measures
+ * the cost of hashing and copying rather than of the disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FileHashingBenchmark {
+
+    @Param({"4096", "262144", "4194304", "67108864"})
+    private int size;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] data = new byte[size];
+        new Random(0).nextBytes(data);
+        file = File.createTempFile("hashbench", ".bin");
+        Files.write(data, file);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public String fileHashing() throws IOException {
+        return FileHashing.sha1(file);
+    }
+
+    @Benchmark
+    public String guava() throws IOException {
+        return Files.hash(file, Hashing.sha1()).toString();
+    }
+
+    @Benchmark
+    public byte[] stream() throws IOException {
+        MessageDigest digest = FileHashing.createDigest();
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            byte[] data = new byte[8192];
+            int len;
+            while ((len = fis.read(data)) != -1) {
+                digest.update(data, 0, len);
+            }
+        } finally {
+            closeQuietly(fis);
+        }
+        return digest.digest();
+    }
+
+    @Benchmark
+    public byte[] directBuffer() throws IOException {
+        MessageDigest digest = FileHashing.createDigest();
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            FileChannel channel = fis.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            closeQuietly(fis);
+        }
+        return digest.digest();
+    }
+
+    @Benchmark
+    public byte[] mapped() throws IOException {
+        MessageDigest digest = FileHashing.createDigest();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            digest.update(buffer);
+        } finally {
+            raf.close();
+        }
+        return digest.digest();
+    }
+
+}